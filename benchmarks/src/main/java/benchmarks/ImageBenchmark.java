@@ -0,0 +1,83 @@
+package benchmarks;
+
+import image.BrightnessPyramid;
+import image.Image;
+import image.ImageManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Benchmarks of the image half of the pipeline: loading, padding, tiling and
+ * building the brightness grid. Image sizes are deliberately not powers of
+ * two, so that padding is always exercised.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ImageBenchmark {
+
+    @Param({"300", "1000", "3000"})
+    public int size;
+
+    @Param({"32", "128", "512"})
+    public int resolution;
+
+    private File imageFile;
+    private Image image;
+    private Image paddedImage;
+    private BrightnessPyramid brightnessPyramid;
+
+    @Setup
+    public void setup() throws IOException {
+        imageFile = SyntheticImages.writeImageFile(size, size, "png");
+        image = SyntheticImages.createImage(size, size);
+        paddedImage = ImageManager.imagePadding(image);
+        brightnessPyramid = new BrightnessPyramid(paddedImage);
+    }
+
+    @Benchmark
+    public Image load() throws IOException {
+        return new Image(imageFile.getPath());
+    }
+
+    @Benchmark
+    public Image imagePadding() {
+        return ImageManager.imagePadding(image);
+    }
+
+    @Benchmark
+    public Image[][] divideToSubImages() {
+        return ImageManager.divideToSubImages(paddedImage, resolution);
+    }
+
+    @Benchmark
+    public double[][] brightnessGrid() {
+        return ImageManager.getBrightnessGrid(paddedImage, resolution);
+    }
+
+    @Benchmark
+    public double[][] parallelBrightnessGrid() {
+        return ImageManager.getBrightnessGrid(paddedImage, resolution,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public BrightnessPyramid brightnessPyramid() {
+        return new BrightnessPyramid(paddedImage);
+    }
+
+    @Benchmark
+    public double[][] brightnessPyramidGrid() {
+        return brightnessPyramid.getBrightnessGrid(resolution);
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * Benchmarks of SubImgCharMatcher: the per-tile char lookup, and charset changes.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MatcherBenchmark {
+    private static final int LOOKUPS = 1 << 16;
+    private static final String PRINTABLE_ASCII;
+
+    static {
+        StringBuilder printable = new StringBuilder();
+        for (char c = ' '; c <= '~'; c++) {
+            printable.append(c);
+        }
+        PRINTABLE_ASCII = printable.toString();
+    }
+
+    @Param({"0123456789", "printable"})
+    public String charset;
+
+    private SubImgCharMatcher matcher;
+    private double[] brightnessValues;
+
+    @Setup
+    public void setup() {
+        String chars = charset.equals("printable") ? PRINTABLE_ASCII : charset;
+        matcher = new SubImgCharMatcher(chars.toCharArray());
+        Random random = new Random(42);
+        brightnessValues = new double[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            brightnessValues[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getCharByImageBrightness(Blackhole blackhole) {
+        for (double brightness : brightnessValues) {
+            blackhole.consume(matcher.getCharByImageBrightness(brightness));
+        }
+    }
+
+    @Benchmark
+    public void addAndRemoveChar() {
+        matcher.addChar('é');
+        matcher.removeChar('é');
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import ascii_art.AsciiArtAlgorithm;
+import ascii_output.HtmlAsciiOutput;
+import image.ImageManager;
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Writer;
+
+/**
+ * Benchmarks of the char half of the pipeline: mapping a brightness grid to
+ * chars, and writing the HTML page (to a null writer, to leave I/O out).
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OutputBenchmark {
+    private static final int IMAGE_SIZE = 2048;
+
+    @Param({"128", "512", "1024"})
+    public int resolution;
+
+    private AsciiArtAlgorithm algorithm;
+    private char[][] chars;
+    private HtmlAsciiOutput htmlOutput;
+
+    @Setup
+    public void setup() {
+        SubImgCharMatcher matcher =
+                new SubImgCharMatcher("0123456789<>&".toCharArray());
+        algorithm = new AsciiArtAlgorithm(ImageManager.getBrightnessGrid(
+                SyntheticImages.createImage(IMAGE_SIZE, IMAGE_SIZE), resolution),
+                matcher);
+        chars = algorithm.run();
+        htmlOutput = new HtmlAsciiOutput(Writer.nullWriter(), "Courier New");
+    }
+
+    @Benchmark
+    public char[][] run() {
+        return algorithm.run();
+    }
+
+    @Benchmark
+    public void htmlOut() {
+        htmlOutput.out(chars);
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import image.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic images for the benchmarks: a colour gradient with
+ * noise, so that tiles differ and nothing compresses to a constant.
+ */
+final class SyntheticImages {
+    private static final long SEED = 42;
+
+    private SyntheticImages() {
+    }
+
+    static int[] createPixels(int width, int height) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                int red = j * 255 / width;
+                int green = i * 255 / height;
+                int blue = random.nextInt(256);
+                pixels[i * width + j] = 0xFF000000 | red << 16 | green << 8 | blue;
+            }
+        }
+        return pixels;
+    }
+
+    static Image createImage(int width, int height) {
+        return new Image(createPixels(width, height), width, height);
+    }
+
+    // writes the synthetic image to a temporary file of the given format.
+    static File writeImageFile(int width, int height, String format)
+            throws IOException {
+        BufferedImage bufferedImage =
+                new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        bufferedImage.setRGB(0, 0, width, height,
+                createPixels(width, height), 0, width);
+        File file = File.createTempFile("benchmark", "." + format);
+        file.deleteOnExit();
+        ImageIO.write(bufferedImage, format, file);
+        return file;
+    }
+}
@@ -0,0 +1,56 @@
+package image;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * The Vector API implementation of LuminanceKernel. Each step loads as many
+ * pixels as the preferred double vector has lanes, widens the channels to
+ * doubles, computes (red * R + green * G) + blue * B with separate multiplies
+ * and adds, as the scalar expression does (no fused multiply-add), and
+ * truncates back to ints with Java cast semantics. The int lanes are summed
+ * and reduced once at the end; the remaining pixels, and runs too short
+ * for two steps, go through the scalar kernel. Loaded only by
+ * LuminanceKernel, when the module is present.
+ */
+final class VectorLuminanceKernel extends LuminanceKernel {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // ints with one lane per double lane, so conversions keep every lane.
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class,
+            VectorShape.forBitSize(DOUBLES.length() * Integer.SIZE));
+    private static final int CHANNEL_MASK = 0xFF;
+    private static final int MIN_VECTOR_RUN = 2 * INTS.length();
+
+    @Override
+    int sumGreyscale(int[] pixels, int from, int to) {
+        if (to - from < MIN_VECTOR_RUN) {
+            return SCALAR.sumGreyscale(pixels, from, to);
+        }
+        IntVector sums = IntVector.zero(INTS);
+        int j = from;
+        for (int upper = from + INTS.loopBound(to - from); j < upper;
+             j += INTS.length()) {
+            IntVector rgb = IntVector.fromArray(INTS, pixels, j);
+            DoubleVector red = toDoubles(rgb.lanewise(VectorOperators.LSHR, 16));
+            DoubleVector green = toDoubles(rgb.lanewise(VectorOperators.LSHR, 8));
+            DoubleVector blue = toDoubles(rgb);
+            DoubleVector greyscale = red.mul(ImageManager.RED_FACTOR)
+                    .add(green.mul(ImageManager.GREEN_FACTOR))
+                    .add(blue.mul(ImageManager.BLUE_FACTOR));
+            sums = sums.add((IntVector) greyscale.convertShape(
+                    VectorOperators.D2I, INTS, 0));
+        }
+        return sums.reduceLanes(VectorOperators.ADD)
+                + SCALAR.sumGreyscale(pixels, j, to);
+    }
+
+    // the low byte of every lane, as doubles.
+    private static DoubleVector toDoubles(IntVector channel) {
+        return (DoubleVector) channel.and(CHANNEL_MASK)
+                .convertShape(VectorOperators.I2D, DOUBLES, 0);
+    }
+}
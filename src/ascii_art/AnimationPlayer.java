@@ -0,0 +1,93 @@
+package ascii_art;
+
+import ascii_output.AnsiAnimationOutput;
+import image.FrameSource;
+import image.GifFrameSource;
+import image.Image;
+import image.ImageSequenceFrameSource;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+
+/**
+ * Plays an animated GIF, or a numbered sequence of image files, as ASCII art
+ * on an ANSI terminal. Only tiles that changed are matched and redrawn.
+ * <p>
+ * Usage: {@code AnimationPlayer <file.gif|pattern%04d.png> [resolution]
+ * [threshold] [fps]}. A frame rate of 0 plays as fast as possible; without
+ * one, GIF frame delays are honoured.
+ */
+public class AnimationPlayer {
+    private static final String GIF_EXTENSION = ".gif";
+    private static final char[] DEFAULT_CHAR_SET =
+            {'1', '2', '3', '4', '5', '6', '7', '8', '9', '0'};
+    private static final int DEFAULT_RES = 128;
+    private static final double DEFAULT_THRESHOLD = 0.01;
+    private static final int FIRST_FRAME_INDEX = 1;
+    private static final int SOURCE_IDX = 0;
+    private static final int RES_IDX = 1;
+    private static final int THRESHOLD_IDX = 2;
+    private static final int FPS_IDX = 3;
+    private static final int NO_FPS = -1;
+    private static final double MILLIS_IN_SECOND = 1000.0;
+    private static final double NANOS_IN_MILLI = 1e6;
+
+    public static void main(String[] args) throws IOException,
+            InterruptedException {
+        if (args.length <= SOURCE_IDX) {
+            System.out.println("Usage: AnimationPlayer <file.gif|pattern%04d.png> "
+                    + "[resolution] [threshold] [fps]");
+            return;
+        }
+        String source = args[SOURCE_IDX];
+        int resolution = (args.length > RES_IDX)
+                ? Integer.parseInt(args[RES_IDX]) : DEFAULT_RES;
+        double threshold = (args.length > THRESHOLD_IDX)
+                ? Double.parseDouble(args[THRESHOLD_IDX]) : DEFAULT_THRESHOLD;
+        int fps = (args.length > FPS_IDX)
+                ? Integer.parseInt(args[FPS_IDX]) : NO_FPS;
+
+        FramePipeline pipeline = new FramePipeline(
+                new SubImgCharMatcher(DEFAULT_CHAR_SET), resolution, threshold);
+        AnsiAnimationOutput output = new AnsiAnimationOutput();
+        int frames = 0;
+        long startTime = System.nanoTime();
+        try (FrameSource frameSource = openSource(source)) {
+            Image frame;
+            while ((frame = frameSource.nextFrame()) != null) {
+                long frameStart = System.nanoTime();
+                char[][] chars = pipeline.nextFrame(frame);
+                if (frames == 0) {
+                    output.out(chars);
+                } else {
+                    output.outChanges(chars, pipeline.getChangedTiles());
+                }
+                frames++;
+                sleepRemainder(frameStart, (fps == NO_FPS)
+                        ? frameSource.getFrameDelayMillis()
+                        : (fps == 0 ? 0 : MILLIS_IN_SECOND / fps));
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / NANOS_IN_MILLI
+                / MILLIS_IN_SECOND;
+        System.out.printf("Played %d frames in %.2f s.%n", frames, seconds);
+    }
+
+    private static FrameSource openSource(String source) throws IOException {
+        if (source.toLowerCase().endsWith(GIF_EXTENSION)) {
+            return new GifFrameSource(source);
+        }
+        return new ImageSequenceFrameSource(source, FIRST_FRAME_INDEX);
+    }
+
+    // sleeps for whatever is left of the frame's time slot.
+    private static void sleepRemainder(long frameStart, double frameMillis)
+            throws InterruptedException {
+        long elapsedMillis = (long) ((System.nanoTime() - frameStart)
+                / NANOS_IN_MILLI);
+        long remaining = (long) frameMillis - elapsedMillis;
+        if (remaining > 0) {
+            Thread.sleep(remaining);
+        }
+    }
+}
@@ -3,6 +3,12 @@ package ascii_art;
 import image.Image;
 import image.ImageManager;
 import image_char_matching.SubImgCharMatcher;
+import metrics.Counter;
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * The AsciiArtAlgorithm class converts an image to ASCII art.
@@ -13,43 +19,179 @@ public class AsciiArtAlgorithm {
     private final int numOfVerticalSubImages;
     private final SubImgCharMatcher imageMatcher;
     // represents the brightness of each subImage.
-    private double[][] brightnessGrid;
+    private final double[][] brightnessGrid;
+    // the chars of the last run, and the charset version they were matched with.
+    private char[][] charGrid;
+    private long charGridVersion;
+    // subImages (as row * resolution + col) ordered by brightness, built on
+    // the first charset change and used to find the subImages it affects.
+    private int[] subImagesByBrightness;
+    private double[] sortedBrightness;
 
 
     public AsciiArtAlgorithm(Image image, int resolution,
                              SubImgCharMatcher imageMatcher) {
+        this(image, resolution, imageMatcher, 1);
+    }
+
+    /**
+     * Creates the algorithm, computing the brightness of the subImages with
+     * the given number of threads. The output is the same for any parallelism.
+     *
+     * @param image        the (padded) image to convert
+     * @param resolution   the number of chars in a row
+     * @param imageMatcher the matcher used to pick a char for each subImage
+     * @param parallelism  the number of threads used for the brightness grid
+     */
+    public AsciiArtAlgorithm(Image image, int resolution,
+                             SubImgCharMatcher imageMatcher, int parallelism) {
         this.resolution = resolution;
         this.imageMatcher = imageMatcher;
         numOfVerticalSubImages =
                 ImageManager.countVertiaclSubImages(image, resolution);
-        initialSetup(image, resolution);
+        // subImages - and their brightnesses don't change throughout class lifetime
+        brightnessGrid = ImageManager.getBrightnessGrid(image, resolution,
+                parallelism);
     }
 
-    private void initialSetup(Image image, int resolution) {
-        Image[][] subImages = ImageManager.divideToSubImages(image,
-                resolution);
-        // subImages - and their brightnesses don't change throughout class lifetime
-        brightnessGrid = new double[numOfVerticalSubImages][resolution];
-        for (int i = 0; i < numOfVerticalSubImages; i++) {
-            for (int j = 0; j < resolution; j++) {
-                brightnessGrid[i][j] =
-                        ImageManager.getImageBrightness(subImages[i][j]);
-            }
-        }
+    /**
+     * Creates the algorithm over an already computed brightness grid, for
+     * example one taken from a {@link image.BrightnessPyramid}.
+     *
+     * @param brightnessGrid the brightness of each subImage, by row and column
+     * @param imageMatcher   the matcher used to pick a char for each subImage
+     */
+    public AsciiArtAlgorithm(double[][] brightnessGrid,
+                             SubImgCharMatcher imageMatcher) {
+        this.resolution = brightnessGrid[0].length;
+        this.imageMatcher = imageMatcher;
+        this.numOfVerticalSubImages = brightnessGrid.length;
+        this.brightnessGrid = brightnessGrid;
+    }
+
+    /**
+     * Returns the number of rows of chars the algorithm produces.
+     */
+    public int getRows() {
+        return numOfVerticalSubImages;
+    }
+
+    /**
+     * Returns the number of chars in each row the algorithm produces.
+     */
+    public int getColumns() {
+        return resolution;
     }
 
     /**
      * Runs the ASCII art conversion algorithm.
+     * After the charset of the matcher changes, only the subImages whose
+     * brightness falls in the range affected by the change are matched again.
      *
      * @return a 2D array of characters representing the ASCII art
      */
     public char[][] run() {
-        char[][] resultAsciiImage = new char[numOfVerticalSubImages][resolution];
+        PipelineMetrics.startStage(Stage.MATCHING);
+        updateCharGrid();
+        char[][] resultAsciiImage = new char[numOfVerticalSubImages][];
+        for (int i = 0; i < numOfVerticalSubImages; i++) {
+            resultAsciiImage[i] = charGrid[i].clone();
+        }
+        PipelineMetrics.endStage(Stage.MATCHING);
+        return resultAsciiImage;
+    }
+
+    /**
+     * Runs the ASCII art conversion algorithm into a caller supplied buffer,
+     * so that repeated runs allocate nothing once the first one is done.
+     * Row i of the result is written at out[offset + i * stride], and the
+     * chars between the end of a row and the start of the next one are left
+     * untouched.
+     *
+     * @param out    the buffer, holding at least
+     *               offset + (getRows() - 1) * stride + getColumns() chars
+     * @param offset the index of the first char of the first row
+     * @param stride the distance between the starts of two rows, at least
+     *               getColumns()
+     */
+    public void run(char[] out, int offset, int stride) {
+        long end = offset + (long) (numOfVerticalSubImages - 1) * stride
+                + resolution;
+        if (stride < resolution || offset < 0 || end > out.length) {
+            throw new IllegalArgumentException("Output buffer too small.");
+        }
+        PipelineMetrics.startStage(Stage.MATCHING);
+        updateCharGrid();
+        for (int i = 0; i < numOfVerticalSubImages; i++) {
+            System.arraycopy(charGrid[i], 0, out, offset + i * stride, resolution);
+        }
+        PipelineMetrics.endStage(Stage.MATCHING);
+    }
+
+    // brings charGrid up to date with the charset of the matcher.
+    private void updateCharGrid() {
+        if (charGrid == null) {
+            charGrid = new char[numOfVerticalSubImages][resolution];
+            remapAll();
+        } else if (charGridVersion != imageMatcher.getVersion()) {
+            double[] changedRange =
+                    imageMatcher.getChangedBrightnessRange(charGridVersion);
+            if (changedRange[0] == Double.NEGATIVE_INFINITY
+                    && changedRange[1] == Double.POSITIVE_INFINITY) {
+                remapAll();
+            } else if (changedRange[0] <= changedRange[1]) {
+                remapRange(changedRange[0], changedRange[1]);
+            }
+        }
+        charGridVersion = imageMatcher.getVersion();
+    }
+
+    private void remapAll() {
         for (int i = 0; i < numOfVerticalSubImages; i++) {
             for (int j = 0; j < resolution; j++) {
-                resultAsciiImage[i][j] = imageMatcher.getCharByImageBrightness(brightnessGrid[i][j]);
+                charGrid[i][j] = imageMatcher.getCharByImageBrightness(brightnessGrid[i][j]);
             }
         }
-        return resultAsciiImage;
+        PipelineMetrics.add(Counter.TILES_MATCHED,
+                (long) numOfVerticalSubImages * resolution);
+    }
+
+    // matches again every subImage whose brightness is in [low, high].
+    private void remapRange(double low, double high) {
+        if (subImagesByBrightness == null) {
+            sortSubImagesByBrightness();
+        }
+        int first = Arrays.binarySearch(sortedBrightness, low);
+        if (first < 0) {
+            first = -first - 1;
+        }
+        // binarySearch may land on any of several equal values.
+        while (first > 0 && sortedBrightness[first - 1] >= low) {
+            first--;
+        }
+        int k = first;
+        for (; k < sortedBrightness.length && sortedBrightness[k] <= high; k++) {
+            int i = subImagesByBrightness[k] / resolution;
+            int j = subImagesByBrightness[k] % resolution;
+            charGrid[i][j] = imageMatcher.getCharByImageBrightness(brightnessGrid[i][j]);
+        }
+        PipelineMetrics.add(Counter.TILES_MATCHED, k - first);
+    }
+
+    private void sortSubImagesByBrightness() {
+        int subImages = numOfVerticalSubImages * resolution;
+        Integer[] order = new Integer[subImages];
+        for (int k = 0; k < subImages; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(
+                k -> brightnessGrid[k / resolution][k % resolution]));
+        subImagesByBrightness = new int[subImages];
+        sortedBrightness = new double[subImages];
+        for (int k = 0; k < subImages; k++) {
+            subImagesByBrightness[k] = order[k];
+            sortedBrightness[k] =
+                    brightnessGrid[order[k] / resolution][order[k] % resolution];
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,91 @@
+package ascii_art;
+
+import ascii_output.ConsoleAsciiOutput;
+import image_char_matching.SubImgCharMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsciiArtAlgorithmTest {
+
+    private static final int ROWS = 5;
+    private static final int COLUMNS = 7;
+    private static final int OFFSET = 3;
+    private static final int STRIDE = COLUMNS + 4;
+    private static final char GAP = '~';
+
+    @Test
+    void testFlatRunLeavesTheGapsAndMatchesRows() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher("0123456789".toCharArray());
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(createGrid(), matcher);
+        char[] out = new char[OFFSET + ROWS * STRIDE + 2];
+
+        assertFlatRun(algorithm, out);
+        // a charset change re-matches part of the grid, into the same buffer.
+        matcher.addChar('@');
+        matcher.removeChar('5');
+        assertFlatRun(algorithm, out);
+    }
+
+    @Test
+    void testFlatOutputMatchesRowOutput() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher("ab@#. ".toCharArray());
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(createGrid(), matcher);
+        char[] out = new char[OFFSET + ROWS * STRIDE];
+        Arrays.fill(out, GAP);
+        algorithm.run(out, OFFSET, STRIDE);
+
+        StringWriter flat = new StringWriter();
+        new ConsoleAsciiOutput(flat).out(out, OFFSET, ROWS, COLUMNS, STRIDE);
+        StringWriter rows = new StringWriter();
+        new ConsoleAsciiOutput(rows).out(algorithm.run());
+        assertEquals(rows.toString(), flat.toString());
+        assertFalse(flat.toString().contains(String.valueOf(GAP)));
+    }
+
+    @Test
+    void testFlatRunRejectsSmallBuffers() {
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(createGrid(),
+                new SubImgCharMatcher("ab".toCharArray()));
+        int size = OFFSET + (ROWS - 1) * STRIDE + COLUMNS;
+        algorithm.run(new char[size], OFFSET, STRIDE);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> algorithm.run(new char[size - 1], OFFSET, STRIDE));
+        assertThrows(IllegalArgumentException.class,
+                () -> algorithm.run(new char[size], OFFSET, COLUMNS - 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> algorithm.run(new char[size], -1, STRIDE));
+    }
+
+    // runs into a buffer filled with GAP and compares with run().
+    private static void assertFlatRun(AsciiArtAlgorithm algorithm, char[] out) {
+        Arrays.fill(out, GAP);
+        algorithm.run(out, OFFSET, STRIDE);
+        char[][] rows = algorithm.run();
+
+        assertEquals(ROWS, rows.length);
+        for (int k = 0; k < out.length; k++) {
+            int row = (k - OFFSET) / STRIDE;
+            int column = (k - OFFSET) % STRIDE;
+            if (k >= OFFSET && row < ROWS && column < COLUMNS) {
+                assertEquals(rows[row][column], out[k], "row " + row);
+            } else {
+                assertEquals(GAP, out[k], "index " + k);
+            }
+        }
+    }
+
+    private static double[][] createGrid() {
+        double[][] grid = new double[ROWS][COLUMNS];
+        for (int i = 0; i < ROWS; i++) {
+            for (int j = 0; j < COLUMNS; j++) {
+                grid[i][j] = ((i * COLUMNS + j) * 37 % 100) / 100.0;
+            }
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,514 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import ascii_output.ColorAsciiOutput;
+import ascii_output.ColorPalette;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import image.ImageManager;
+import image.RawImageLoader;
+import image.RawPixelFormat;
+import image.StreamingImageLoader;
+import image_char_matching.GlyphCache;
+import image_char_matching.ShapeCharMatcher;
+import image_char_matching.SubImgCharMatcher;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Non-interactive entry point converting many images in one run.
+ * All files share one SubImgCharMatcher, and therefore one glyph setup, and
+ * are converted by a bounded pool of worker threads. Per-file and aggregate
+ * throughput are reported at the end.
+ * <p>
+ * Usage: {@code BatchConverter [options] <image|directory|@listFile>...}
+ * with the options {@code --res N}, {@code --chars STRING},
+ * {@code --output html|console}, {@code --out-dir DIR}, {@code --font NAME},
+ * {@code --threads N}, {@code --glyph-cache FILE}, {@code --streaming}, which
+ * decodes each image band by band instead of holding it in memory, and
+ * {@code --color ansi256|truecolor}, which colours each char with the average
+ * colour of its sub-image, and {@code --shape}, which picks chars that follow
+ * the edges of the image, and {@code --dither fs|ordered}, which dithers
+ * between the brightness levels of the charset. HTML pages are written with
+ * {@code --compact} as run-length coded rows that a script expands, and with
+ * {@code --gzip} compressed into .html.gz files. With {@code --raw rgb24|rgba|gray8} and
+ * {@code --size WIDTHxHEIGHT}, the inputs are raw frames of that layout and
+ * size, memory-mapped instead of decoded; raw frames are listed as files,
+ * since a directory only yields the images ImageIO can read.
+ * <p>
+ * HTML pages are named after their input file. When several inputs share a
+ * file name, whatever their directories, the later ones in input order get
+ * a "-2", "-3"... suffix, so that no two pages are written to the same file.
+ * {@code --font} only sets the font the pages are shown in; the chars are
+ * always matched by their glyphs in the matcher's own font.
+ */
+public class BatchConverter {
+
+    // constants
+    private static final String RES_OPTION = "--res";
+    private static final String CHARS_OPTION = "--chars";
+    private static final String OUTPUT_OPTION = "--output";
+    private static final String OUT_DIR_OPTION = "--out-dir";
+    private static final String FONT_OPTION = "--font";
+    private static final String THREADS_OPTION = "--threads";
+    private static final String GLYPH_CACHE_OPTION = "--glyph-cache";
+    private static final String STREAMING_OPTION = "--streaming";
+    private static final String COLOR_OPTION = "--color";
+    private static final String SHAPE_OPTION = "--shape";
+    private static final String COMPACT_OPTION = "--compact";
+    private static final String GZIP_OPTION = "--gzip";
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final String DITHER_OPTION = "--dither";
+    private static final String FLOYD_STEINBERG_DITHER = "fs";
+    private static final String ORDERED_DITHER = "ordered";
+    private static final String RAW_OPTION = "--raw";
+    private static final String SIZE_OPTION = "--size";
+    private static final String SIZE_SEPARATOR = "x";
+    private static final String RGB24_RAW = "rgb24";
+    private static final String RGBA_RAW = "rgba";
+    private static final String GRAY8_RAW = "gray8";
+    private static final String ANSI_256_COLOR = "ansi256";
+    private static final String TRUECOLOR_COLOR = "truecolor";
+    private static final String HTML_OUTPUT = "html";
+    private static final String CONSOLE_OUTPUT = "console";
+    private static final String LIST_FILE_PREFIX = "@";
+    private static final String HTML_EXTENSION = ".html";
+    private static final String DUPLICATE_NAME_SEPARATOR = "-";
+    private static final String RESOLUTION_ERROR =
+            "resolution exceeds image boundaries";
+    private static final String DEFAULT_CHAR_SET = "1234567890";
+    private static final String DEFAULT_FONT = "Courier New";
+    private static final int DEFAULT_RES = 128;
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final double NANOS_IN_SECOND = 1e9;
+    private static final double PIXELS_IN_MEGAPIXEL = 1e6;
+    private static final String USAGE =
+            "Usage: BatchConverter [--res N] [--chars STRING] "
+                    + "[--output html|console] [--out-dir DIR] [--font NAME] "
+                    + "[--threads N] [--glyph-cache FILE] [--streaming] "
+                    + "[--color ansi256|truecolor] [--shape] [--dither fs|ordered] "
+                    + "[--compact] [--gzip] "
+                    + "[--raw rgb24|rgba|gray8 --size WIDTHxHEIGHT] "
+                    + "<image|directory|@listFile>...";
+
+    // attributes
+    private int resolution = DEFAULT_RES;
+    private String charSet = DEFAULT_CHAR_SET;
+    private String outputType = HTML_OUTPUT;
+    private Path outDir = Paths.get(".");
+    private String fontName = DEFAULT_FONT;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path glyphCacheFile;
+    private boolean streaming = false;
+    // null for monochrome output.
+    private ColorPalette palette;
+    private boolean shape = false;
+    // null for no dithering.
+    private DitherMode ditherMode;
+    private boolean compactHtml = false;
+    private boolean gzipHtml = false;
+    // null for encoded images; otherwise the layout and size of raw frames.
+    private RawPixelFormat rawFormat;
+    private int rawWidth;
+    private int rawHeight;
+    // shape matchers keep per-search state, so each worker gets its own.
+    private final ThreadLocal<ShapeCharMatcher> shapeMatchers =
+            ThreadLocal.withInitial(() -> new ShapeCharMatcher(charSet.toCharArray()));
+    private final List<Path> inputs = new ArrayList<>();
+
+    /**
+     * Converts every input file and prints the throughput report.
+     *
+     * @throws IOException if the inputs or the glyph cache cannot be read
+     */
+    public void run() throws IOException {
+        if (glyphCacheFile != null && Files.exists(glyphCacheFile)) {
+            GlyphCache.load(glyphCacheFile);
+        }
+        SubImgCharMatcher matcher = new SubImgCharMatcher(charSet.toCharArray());
+        if (glyphCacheFile != null) {
+            GlyphCache.save(glyphCacheFile);
+        }
+        if (outputType.equals(HTML_OUTPUT)) {
+            Files.createDirectories(outDir);
+        }
+
+        List<String> outputNames = getOutputNames();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<FileResult>> futures = new ArrayList<>();
+        long startTime = System.nanoTime();
+        try {
+            for (int k = 0; k < inputs.size(); k++) {
+                Path input = inputs.get(k);
+                String outputName = outputNames.get(k);
+                futures.add(pool.submit(() -> convert(input, outputName, matcher)));
+            }
+            List<FileResult> results = new ArrayList<>();
+            for (Future<FileResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            report(results, System.nanoTime() - startTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+     * Names the page of every input after its file name, adding a suffix to
+     * the names already taken by earlier inputs. Names are compared ignoring
+     * case, for case-insensitive file systems.
+     */
+    private List<String> getOutputNames() {
+        List<String> outputNames = new ArrayList<>();
+        Set<String> takenNames = new HashSet<>();
+        for (Path input : inputs) {
+            String baseName = input.getFileName().toString();
+            String name = baseName;
+            int copy = 1;
+            while (!takenNames.add(name.toLowerCase(Locale.ROOT))) {
+                copy++;
+                name = baseName + DUPLICATE_NAME_SEPARATOR + copy;
+            }
+            outputNames.add(name);
+        }
+        return outputNames;
+    }
+
+    private FileResult convert(Path input, String outputName,
+                               SubImgCharMatcher matcher) {
+        long startTime = System.nanoTime();
+        try {
+            char[][] chars;
+            int[][] colors = null;
+            long pixels;
+            if (rawFormat != null) {
+                if (exceedsImage(rawWidth, rawHeight)) {
+                    return failure(input, startTime, RESOLUTION_ERROR);
+                }
+                pixels = (long) rawWidth * rawHeight;
+                chars = match(RawImageLoader.loadBrightnessGrid(input, rawWidth,
+                        rawHeight, rawFormat, resolution), matcher);
+            } else if (streaming) {
+                Dimension dimensions =
+                        StreamingImageLoader.readDimensions(input.toString());
+                if (exceedsImage(dimensions.width, dimensions.height)) {
+                    return failure(input, startTime, RESOLUTION_ERROR);
+                }
+                pixels = (long) dimensions.width * dimensions.height;
+                chars = match(StreamingImageLoader.loadBrightnessGrid(
+                        input.toString(), resolution), matcher);
+            } else {
+                Image image = new Image(input.toString());
+                if (exceedsImage(image.getWidth(), image.getHeight())) {
+                    return failure(input, startTime, RESOLUTION_ERROR);
+                }
+                pixels = (long) image.getWidth() * image.getHeight();
+                image = ImageManager.imagePadding(image);
+                double[][] brightnessGrid;
+                if (palette == null) {
+                    brightnessGrid = ImageManager.getBrightnessGrid(image, resolution);
+                } else {
+                    colors = new int[ImageManager.countVertiaclSubImages(image,
+                            resolution)][resolution];
+                    brightnessGrid = ImageManager.getBrightnessGrid(image,
+                            resolution, colors);
+                }
+                chars = shape
+                        ? new ShapeAsciiArtAlgorithm(image, brightnessGrid,
+                                shapeMatchers.get()).run()
+                        : match(brightnessGrid, matcher);
+            }
+            if (outputType.equals(CONSOLE_OUTPUT)) {
+                // one image at a time, so that renders do not interleave.
+                synchronized (System.out) {
+                    write(new ConsoleAsciiOutput(), chars, colors);
+                }
+            } else {
+                String fileName = outputName + HTML_EXTENSION
+                        + (gzipHtml ? GZIP_EXTENSION : "");
+                HtmlAsciiOutput output = new HtmlAsciiOutput(
+                        outDir.resolve(fileName).toString(), fontName,
+                        compactHtml, gzipHtml);
+                write(output, chars, colors);
+            }
+            return new FileResult(input, pixels, System.nanoTime() - startTime,
+                    null);
+        } catch (IOException | RuntimeException e) {
+            return failure(input, startTime, String.valueOf(e.getMessage()));
+        }
+    }
+
+    // whether the resolution is finer than the padded image, on every path.
+    private boolean exceedsImage(int width, int height) {
+        return resolution > ImageManager.getPaddedSize(width)
+                || resolution > ImageManager.getPaddedSize(height);
+    }
+
+    private static FileResult failure(Path input, long startTime, String error) {
+        return new FileResult(input, 0, System.nanoTime() - startTime, error);
+    }
+
+    // matches a brightness grid to chars, dithering if asked to.
+    private char[][] match(double[][] brightnessGrid, SubImgCharMatcher matcher) {
+        if (ditherMode == null) {
+            return new AsciiArtAlgorithm(brightnessGrid, matcher).run();
+        }
+        // files are converted in parallel already, so each dithers alone.
+        return new DitheredAsciiArtAlgorithm(brightnessGrid, matcher,
+                ditherMode).run();
+    }
+
+    // writes in colour when there are colours, and in monochrome otherwise.
+    private <T extends AsciiOutput & ColorAsciiOutput> void write(
+            T output, char[][] chars, int[][] colors) {
+        if (colors == null) {
+            output.out(chars);
+        } else {
+            output.out(chars, colors, palette);
+        }
+    }
+
+    private static void report(List<FileResult> results, long totalNanos) {
+        long totalPixels = 0;
+        int failures = 0;
+        for (FileResult result : results) {
+            if (result.error == null) {
+                totalPixels += result.pixels;
+                System.out.printf("%s: %.1f ms, %.3f MP%n", result.input,
+                        result.nanos / NANOS_IN_MILLI,
+                        result.pixels / PIXELS_IN_MEGAPIXEL);
+            } else {
+                failures++;
+                System.out.printf("%s: failed (%s)%n", result.input, result.error);
+            }
+        }
+        double seconds = totalNanos / NANOS_IN_SECOND;
+        System.out.printf("Converted %d of %d files in %.2f s: "
+                        + "%.1f files/s, %.2f MP/s, %d failed.%n",
+                results.size() - failures, results.size(), seconds,
+                (results.size() - failures) / seconds,
+                totalPixels / PIXELS_IN_MEGAPIXEL / seconds, failures);
+    }
+
+    private void parseArgs(String[] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                addInput(arg);
+                continue;
+            }
+            if (arg.equals(STREAMING_OPTION)) {
+                streaming = true;
+                continue;
+            }
+            if (arg.equals(SHAPE_OPTION)) {
+                shape = true;
+                continue;
+            }
+            if (arg.equals(COMPACT_OPTION)) {
+                compactHtml = true;
+                continue;
+            }
+            if (arg.equals(GZIP_OPTION)) {
+                gzipHtml = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case RES_OPTION:
+                    resolution = Integer.parseInt(value);
+                    break;
+                case CHARS_OPTION:
+                    charSet = value;
+                    break;
+                case OUTPUT_OPTION:
+                    if (!value.equals(HTML_OUTPUT) && !value.equals(CONSOLE_OUTPUT)) {
+                        throw new IllegalArgumentException("Unknown output " + value);
+                    }
+                    outputType = value;
+                    break;
+                case OUT_DIR_OPTION:
+                    outDir = Paths.get(value);
+                    break;
+                case FONT_OPTION:
+                    fontName = value;
+                    break;
+                case THREADS_OPTION:
+                    threads = Integer.parseInt(value);
+                    break;
+                case GLYPH_CACHE_OPTION:
+                    glyphCacheFile = Paths.get(value);
+                    break;
+                case COLOR_OPTION:
+                    palette = parsePalette(value);
+                    break;
+                case DITHER_OPTION:
+                    ditherMode = parseDitherMode(value);
+                    break;
+                case RAW_OPTION:
+                    rawFormat = parseRawFormat(value);
+                    break;
+                case SIZE_OPTION:
+                    parseSize(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (inputs.isEmpty() || charSet.isEmpty() || resolution < 1 || threads < 1) {
+            throw new IllegalArgumentException("Invalid arguments.");
+        }
+        if (streaming && (palette != null || shape)) {
+            throw new IllegalArgumentException(
+                    "Colour and shape matching need whole images, not --streaming.");
+        }
+        if ((compactHtml || gzipHtml) && !outputType.equals(HTML_OUTPUT)) {
+            throw new IllegalArgumentException(
+                    "--compact and --gzip apply to HTML output only.");
+        }
+        if (shape && ditherMode != null) {
+            throw new IllegalArgumentException(
+                    "Shape matching cannot be dithered.");
+        }
+        if (rawFormat != null && (palette != null || shape || streaming)) {
+            throw new IllegalArgumentException(
+                    "Raw frames support neither colour, shape matching nor --streaming.");
+        }
+        if (rawFormat != null && rawWidth < 1) {
+            throw new IllegalArgumentException("Raw frames need a --size.");
+        }
+    }
+
+    private static DitherMode parseDitherMode(String value) {
+        switch (value) {
+            case FLOYD_STEINBERG_DITHER:
+                return DitherMode.FLOYD_STEINBERG;
+            case ORDERED_DITHER:
+                return DitherMode.ORDERED;
+            default:
+                throw new IllegalArgumentException("Unknown dither mode " + value);
+        }
+    }
+
+    private static RawPixelFormat parseRawFormat(String value) {
+        switch (value) {
+            case RGB24_RAW:
+                return RawPixelFormat.RGB24;
+            case RGBA_RAW:
+                return RawPixelFormat.RGBA;
+            case GRAY8_RAW:
+                return RawPixelFormat.GRAY8;
+            default:
+                throw new IllegalArgumentException("Unknown raw format " + value);
+        }
+    }
+
+    private void parseSize(String value) {
+        String[] dimensions = value.split(SIZE_SEPARATOR);
+        if (dimensions.length != 2) {
+            throw new IllegalArgumentException("Invalid size " + value);
+        }
+        rawWidth = Integer.parseInt(dimensions[0]);
+        rawHeight = Integer.parseInt(dimensions[1]);
+        if (rawWidth < 1 || rawHeight < 1) {
+            throw new IllegalArgumentException("Invalid size " + value);
+        }
+    }
+
+    private static ColorPalette parsePalette(String value) {
+        switch (value) {
+            case ANSI_256_COLOR:
+                return ColorPalette.ANSI_256;
+            case TRUECOLOR_COLOR:
+                return ColorPalette.TRUECOLOR;
+            default:
+                throw new IllegalArgumentException("Unknown color palette " + value);
+        }
+    }
+
+    // an input is an image, a directory of images, or @file listing images.
+    private void addInput(String arg) throws IOException {
+        if (arg.startsWith(LIST_FILE_PREFIX)) {
+            for (String line : Files.readAllLines(
+                    Paths.get(arg.substring(LIST_FILE_PREFIX.length())))) {
+                if (!line.isBlank()) {
+                    inputs.add(Paths.get(line.trim()));
+                }
+            }
+            return;
+        }
+        File file = new File(arg);
+        if (file.isDirectory()) {
+            Set<String> suffixes = new HashSet<>(
+                    Arrays.asList(ImageIO.getReaderFileSuffixes()));
+            File[] children = file.listFiles(child -> child.isFile()
+                    && suffixes.contains(getSuffix(child.getName())));
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    inputs.add(child.toPath());
+                }
+            }
+        } else {
+            inputs.add(file.toPath());
+        }
+    }
+
+    private static String getSuffix(String fileName) {
+        int dotIdx = fileName.lastIndexOf('.');
+        return (dotIdx < 0) ? "" : fileName.substring(dotIdx + 1).toLowerCase();
+    }
+
+    public static void main(String[] args) throws IOException {
+        BatchConverter converter = new BatchConverter();
+        try {
+            converter.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(USAGE);
+            return;
+        }
+        converter.run();
+    }
+
+    private static final class FileResult {
+        private final Path input;
+        private final long pixels;
+        private final long nanos;
+        // null when the conversion succeeded.
+        private final String error;
+
+        private FileResult(Path input, long pixels, long nanos, String error) {
+            this.input = input;
+            this.pixels = pixels;
+            this.nanos = nanos;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ascii_art;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchConverterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSameNamesAndBrokenFiles() throws IOException {
+        Path first = Files.createDirectories(directory.resolve("a"));
+        Path second = Files.createDirectories(directory.resolve("b"));
+        Path third = Files.createDirectories(directory.resolve("c"));
+        writeImage(first.resolve("img.png"), 0x000000);
+        Files.write(first.resolve("broken.png"), new byte[]{1, 2, 3});
+        writeImage(second.resolve("img.png"), 0x808080);
+        writeImage(third.resolve("IMG.png"), 0xFFFFFF);
+        Path outDir = directory.resolve("out");
+
+        String report = runConverter("--res", "4", "--chars", "ab",
+                "--out-dir", outDir.toString(), first.toString(),
+                second.toString(), third.toString());
+
+        // later inputs of a taken name, whatever its case, get a suffix.
+        assertEquals(List.of("IMG.png-3.html", "img.png-2.html", "img.png.html"),
+                listFiles(outDir));
+        assertNotEquals(Files.readString(outDir.resolve("img.png.html")),
+                Files.readString(outDir.resolve("img.png-2.html")));
+        assertTrue(report.contains(first.resolve("broken.png") + ": failed ("),
+                report);
+        assertTrue(report.contains("Converted 3 of 4 files in "), report);
+        assertTrue(report.contains(", 1 failed."), report);
+    }
+
+    @Test
+    void testResolutionIsCheckedOnEveryPath() throws IOException {
+        Path image = directory.resolve("small.png");
+        writeImage(image, 0x808080);
+        Path raw = directory.resolve("small.raw");
+        Files.write(raw, new byte[8 * 8]);
+        String error = ": failed (resolution exceeds image boundaries)";
+
+        for (String[] args : new String[][]{
+                {"--res", "16", image.toString()},
+                {"--res", "16", "--streaming", image.toString()},
+                {"--res", "16", "--raw", "gray8", "--size", "8x8", raw.toString()}}) {
+            List<String> arguments = new ArrayList<>(List.of(args));
+            arguments.add(0, directory.resolve("out").toString());
+            arguments.add(0, "--out-dir");
+            String report = runConverter(arguments.toArray(new String[0]));
+            assertTrue(report.contains(args[args.length - 1] + error), report);
+            assertTrue(report.contains(", 1 failed."), report);
+        }
+        assertEquals(List.of(), listFiles(directory.resolve("out")));
+    }
+
+    // runs the converter, returning what it prints.
+    private static String runConverter(String... args) throws IOException {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        try {
+            BatchConverter.main(args);
+        } finally {
+            System.setOut(stdout);
+        }
+        return printed.toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> listFiles(Path directory) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> names.add(file.getFileName().toString()));
+        }
+        names.sort(null);
+        return names;
+    }
+
+    private static void writeImage(Path file, int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                // two bands, so that the pages of different images differ.
+                image.setRGB(j, i, (i < 4) ? rgb : rgb ^ 0x404040);
+            }
+        }
+        ImageIO.write(image, "png", file.toFile());
+    }
+}
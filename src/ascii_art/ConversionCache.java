@@ -0,0 +1,440 @@
+package ascii_art;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.logging.Logger;
+
+/**
+ * A content-addressed cache of conversions, for traffic that converts the
+ * same images with the same settings again and again.
+ * <p>
+ * Results are keyed by a SHA-256 digest of the image bytes together with the
+ * resolution, charset, font and output format. They are kept in memory, least
+ * recently used first out once their total size exceeds a budget, and are
+ * optionally written to a directory, which survives restarts. The files of
+ * the directory are kept under a budget of their own, least recently used
+ * first out as well; their order is carried across restarts by the files'
+ * modification times, which a disk hit refreshes. Below the results, the brightness grid of each (image, resolution)
+ * is kept under its own budget, so converting a cached image with another
+ * charset, font or format needs no decoding. Hits, misses and evictions of
+ * every tier are counted.
+ * <p>
+ * An instance is thread-safe. Grids returned by it are shared and must not be
+ * modified.
+ */
+public class ConversionCache {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String RESULT_SUFFIX = ".txt";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // rough per-entry overhead of a map node, its key and its value header.
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+    private static final ToLongFunction<String> RESULT_WEIGHER =
+            result -> ENTRY_OVERHEAD_BYTES + (long) result.length() * Character.BYTES;
+    private static final ToLongFunction<double[][]> GRID_WEIGHER =
+            grid -> ENTRY_OVERHEAD_BYTES
+                    + (long) grid.length * grid[0].length * Double.BYTES;
+
+    private final SizedLru<String> results;
+    private final SizedLru<double[][]> brightnessGrids;
+    // null when there is no disk tier.
+    private final Path directory;
+    private final long maxDiskBytes;
+    // the size of every result file, in access order; guarded by itself.
+    private final LinkedHashMap<String, Long> diskFiles =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+
+    private final LongAdder resultHits = new LongAdder();
+    private final LongAdder resultDiskHits = new LongAdder();
+    private final LongAdder resultMisses = new LongAdder();
+    private final LongAdder gridHits = new LongAdder();
+    private final LongAdder gridMisses = new LongAdder();
+    private final LongAdder diskEvictions = new LongAdder();
+
+    /**
+     * Creates a cache kept in memory only.
+     *
+     * @param maxResultBytes the memory budget of the results
+     * @param maxGridBytes   the memory budget of the brightness grids
+     */
+    public ConversionCache(long maxResultBytes, long maxGridBytes) {
+        this.results = new SizedLru<>(maxResultBytes, RESULT_WEIGHER);
+        this.brightnessGrids = new SizedLru<>(maxGridBytes, GRID_WEIGHER);
+        this.directory = null;
+        this.maxDiskBytes = 0;
+    }
+
+    /**
+     * Creates a cache whose results are also written to the given directory,
+     * which is created if missing. Results already in the directory are
+     * served, and trimmed to the disk budget.
+     *
+     * @param maxResultBytes the memory budget of the results
+     * @param maxGridBytes   the memory budget of the brightness grids
+     * @param directory      the directory of the disk tier
+     * @param maxDiskBytes   the budget of the result files in the directory
+     * @throws IOException if the directory cannot be created or listed
+     */
+    public ConversionCache(long maxResultBytes, long maxGridBytes, Path directory,
+                           long maxDiskBytes) throws IOException {
+        this.results = new SizedLru<>(maxResultBytes, RESULT_WEIGHER);
+        this.brightnessGrids = new SizedLru<>(maxGridBytes, GRID_WEIGHER);
+        this.directory = Files.createDirectories(directory);
+        this.maxDiskBytes = maxDiskBytes;
+        loadDiskFiles();
+    }
+
+    /**
+     * Returns the hex SHA-256 digest of an image's bytes, which identifies the
+     * image in the other methods.
+     */
+    public static String digest(byte[] imageBytes) {
+        return toHex(newDigest().digest(imageBytes));
+    }
+
+    /**
+     * Returns the key of the result of converting an image with the given
+     * settings. Distinct settings always give distinct keys.
+     *
+     * @param imageDigest the digest of the image bytes
+     * @param resolution  the number of chars in a row
+     * @param charSet     the chars of the matcher
+     * @param fontName    the font of the output
+     * @param format      the output format
+     * @return a hex digest, usable as a file name
+     */
+    public static String resultKey(String imageDigest, int resolution,
+                                   String charSet, String fontName, String format) {
+        MessageDigest digest = newDigest();
+        // every variable-length field is preceded by its length.
+        for (String field : new String[]{imageDigest, String.valueOf(resolution),
+                charSet, fontName, format}) {
+            byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            digest.update((byte) (bytes.length >>> 24));
+            digest.update((byte) (bytes.length >>> 16));
+            digest.update((byte) (bytes.length >>> 8));
+            digest.update((byte) bytes.length);
+            digest.update(bytes);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the cached result of the given key, looking in memory and then
+     * on disk, or null if there is none.
+     */
+    public String getResult(String key) {
+        String result = results.get(key);
+        if (result != null) {
+            resultHits.increment();
+            return result;
+        }
+        if (directory != null) {
+            result = readResult(key);
+            if (result != null) {
+                resultDiskHits.increment();
+                results.put(key, result);
+                return result;
+            }
+        }
+        resultMisses.increment();
+        return null;
+    }
+
+    /**
+     * Caches a result under the given key, in memory and on disk.
+     */
+    public void putResult(String key, String result) {
+        results.put(key, result);
+        if (directory != null) {
+            writeResult(key, result);
+        }
+    }
+
+    /**
+     * Returns the cached brightness grid of an image at a resolution, or null
+     * if there is none.
+     */
+    public double[][] getBrightnessGrid(String imageDigest, int resolution) {
+        double[][] grid = brightnessGrids.get(gridKey(imageDigest, resolution));
+        if (grid != null) {
+            gridHits.increment();
+        } else {
+            gridMisses.increment();
+        }
+        return grid;
+    }
+
+    /**
+     * Caches the brightness grid of an image at a resolution. The grid must
+     * not be modified afterwards.
+     */
+    public void putBrightnessGrid(String imageDigest, int resolution,
+                                  double[][] grid) {
+        brightnessGrids.put(gridKey(imageDigest, resolution), grid);
+    }
+
+    /**
+     * Returns the number of results found in memory.
+     */
+    public long getResultHits() {
+        return resultHits.sum();
+    }
+
+    /**
+     * Returns the number of results found on disk only.
+     */
+    public long getResultDiskHits() {
+        return resultDiskHits.sum();
+    }
+
+    /**
+     * Returns the number of results found nowhere.
+     */
+    public long getResultMisses() {
+        return resultMisses.sum();
+    }
+
+    /**
+     * Returns the number of results dropped from memory to fit the budget.
+     */
+    public long getResultEvictions() {
+        return results.evictions.sum();
+    }
+
+    /**
+     * Returns the number of brightness grids found.
+     */
+    public long getGridHits() {
+        return gridHits.sum();
+    }
+
+    /**
+     * Returns the number of brightness grids not found.
+     */
+    public long getGridMisses() {
+        return gridMisses.sum();
+    }
+
+    /**
+     * Returns the number of brightness grids dropped to fit the budget.
+     */
+    public long getGridEvictions() {
+        return brightnessGrids.evictions.sum();
+    }
+
+    /**
+     * Returns the number of result files deleted to fit the disk budget.
+     */
+    public long getDiskEvictions() {
+        return diskEvictions.sum();
+    }
+
+    /**
+     * Returns the size of the result files in the directory.
+     */
+    public long getDiskBytes() {
+        synchronized (diskFiles) {
+            return diskBytes;
+        }
+    }
+
+    /**
+     * Returns the counters and the memory and disk in use as a JSON object.
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"results\":{\"hits\":%d,\"diskHits\":%d,"
+                        + "\"misses\":%d,\"evictions\":%d,\"bytes\":%d,"
+                        + "\"diskEvictions\":%d,\"diskBytes\":%d},"
+                        + "\"grids\":{\"hits\":%d,\"misses\":%d,"
+                        + "\"evictions\":%d,\"bytes\":%d}}",
+                getResultHits(), getResultDiskHits(), getResultMisses(),
+                getResultEvictions(), results.size(), getDiskEvictions(),
+                getDiskBytes(), getGridHits(), getGridMisses(),
+                getGridEvictions(), brightnessGrids.size());
+    }
+
+    // indexes the result files of the directory, oldest first, and trims them.
+    private void loadDiskFiles() throws IOException {
+        Map<Path, FileTime> modifiedTimes = new HashMap<>();
+        try (DirectoryStream<Path> files =
+                     Files.newDirectoryStream(directory, "*" + RESULT_SUFFIX)) {
+            for (Path file : files) {
+                modifiedTimes.put(file, Files.getLastModifiedTime(file));
+            }
+        }
+        List<Path> files = new ArrayList<>(modifiedTimes.keySet());
+        files.sort(Comparator.comparing(modifiedTimes::get));
+        List<Path> evicted;
+        synchronized (diskFiles) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long size = Files.size(file);
+                diskFiles.put(name.substring(0,
+                        name.length() - RESULT_SUFFIX.length()), size);
+                diskBytes += size;
+            }
+            evicted = trimDiskFiles();
+        }
+        deleteFiles(evicted);
+    }
+
+    private String readResult(String key) {
+        synchronized (diskFiles) {
+            if (diskFiles.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(key + RESULT_SUFFIX);
+        try {
+            String result = Files.readString(file, StandardCharsets.UTF_8);
+            // the modification time orders the files after a restart.
+            Files.setLastModifiedTime(file, FileTime.fromMillis(
+                    System.currentTimeMillis()));
+            return result;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Logger.getGlobal().warning("Failed to read cached result " + key);
+            return null;
+        }
+    }
+
+    /*
+     * Writes to a temporary file first, so readers never see half a result,
+     * then deletes the least recently used files beyond the disk budget.
+     */
+    private void writeResult(String key, String result) {
+        byte[] bytes = result.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxDiskBytes) {
+            return;
+        }
+        Path file = directory.resolve(key + RESULT_SUFFIX);
+        try {
+            Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+            Files.write(temp, bytes);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.getGlobal().warning("Failed to write cached result " + key);
+            return;
+        }
+        List<Path> evicted;
+        synchronized (diskFiles) {
+            Long previous = diskFiles.put(key, (long) bytes.length);
+            diskBytes += bytes.length - ((previous != null) ? previous : 0);
+            evicted = trimDiskFiles();
+        }
+        deleteFiles(evicted);
+    }
+
+    // drops the eldest files beyond the budget from the index; holds diskFiles.
+    private List<Path> trimDiskFiles() {
+        List<Path> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> eldest = diskFiles.entrySet().iterator();
+        while (diskBytes > maxDiskBytes) {
+            Map.Entry<String, Long> entry = eldest.next();
+            diskBytes -= entry.getValue();
+            evicted.add(directory.resolve(entry.getKey() + RESULT_SUFFIX));
+            eldest.remove();
+            diskEvictions.increment();
+        }
+        return evicted;
+    }
+
+    private static void deleteFiles(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                Logger.getGlobal().warning("Failed to delete cached result " + file);
+            }
+        }
+    }
+
+    private static String gridKey(String imageDigest, int resolution) {
+        return imageDigest + ':' + resolution;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /*
+     * A map in access order that drops its least recently used entries once
+     * the total weight of its values exceeds maxBytes. A value heavier than
+     * maxBytes on its own is not kept at all.
+     */
+    private static final class SizedLru<V> {
+        private final LinkedHashMap<String, V> entries =
+                new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxBytes;
+        private final ToLongFunction<V> weigher;
+        private final LongAdder evictions = new LongAdder();
+        private long bytes;
+
+        SizedLru(long maxBytes, ToLongFunction<V> weigher) {
+            this.maxBytes = maxBytes;
+            this.weigher = weigher;
+        }
+
+        synchronized V get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(String key, V value) {
+            long weight = weigher.applyAsLong(value);
+            if (weight > maxBytes) {
+                return;
+            }
+            V previous = entries.put(key, value);
+            if (previous != null) {
+                bytes -= weigher.applyAsLong(previous);
+            }
+            bytes += weight;
+            Iterator<Map.Entry<String, V>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes) {
+                bytes -= weigher.applyAsLong(eldest.next().getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized long size() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ascii_art;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversionCacheTest {
+
+    // a result of 100 chars weighs 128 + 200 bytes in memory.
+    private static final int RESULT_LENGTH = 100;
+    private static final long RESULT_WEIGHT = 128 + 2 * RESULT_LENGTH;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testResultsAreEvictedByWeight() {
+        ConversionCache cache = new ConversionCache(3 * RESULT_WEIGHT, 0);
+        for (int k = 0; k < 3; k++) {
+            cache.putResult("key" + k, result(k));
+        }
+        assertEquals(0, cache.getResultEvictions());
+        // touching the first result makes the second the eldest.
+        assertEquals(result(0), cache.getResult("key0"));
+
+        cache.putResult("key3", result(3));
+        assertEquals(1, cache.getResultEvictions());
+        assertNull(cache.getResult("key1"));
+        assertEquals(result(0), cache.getResult("key0"));
+        assertEquals(result(3), cache.getResult("key3"));
+
+        // a heavier result takes the place of two.
+        cache.putResult("key4", result(4).repeat(2));
+        assertEquals(3, cache.getResultEvictions());
+        assertNull(cache.getResult("key2"));
+        assertNull(cache.getResult("key0"));
+        assertTrue(cache.toJson().contains("\"evictions\":3,\"bytes\":"
+                + (RESULT_WEIGHT + 128 + 4 * RESULT_LENGTH) + ","));
+    }
+
+    @Test
+    void testEntriesOverTheBudgetAreNotKept() {
+        ConversionCache cache = new ConversionCache(RESULT_WEIGHT, 128 + 8 * 4);
+        cache.putResult("small", result(0));
+        cache.putResult("large", result(1) + "x");
+        assertNull(cache.getResult("large"));
+        assertEquals(result(0), cache.getResult("small"));
+        assertEquals(0, cache.getResultEvictions());
+
+        cache.putBrightnessGrid("image", 2, new double[2][2]);
+        cache.putBrightnessGrid("image", 4, new double[4][4]);
+        assertNull(cache.getBrightnessGrid("image", 4));
+        assertNotNull(cache.getBrightnessGrid("image", 2));
+        assertEquals(0, cache.getGridEvictions());
+    }
+
+    @Test
+    void testResultsSurviveANewInstance() throws IOException {
+        String key = ConversionCache.resultKey(ConversionCache.digest(new byte[]{1}),
+                8, "ab", "Courier New", "html");
+        String result = "<p>\u00e9\u2028</p>";
+        new ConversionCache(1 << 20, 1 << 20, directory, 1 << 20)
+                .putResult(key, result);
+
+        ConversionCache restarted =
+                new ConversionCache(1 << 20, 1 << 20, directory, 1 << 20);
+        assertEquals(result, restarted.getResult(key));
+        assertEquals(1, restarted.getResultDiskHits());
+        // the disk hit is now in memory.
+        assertEquals(result, restarted.getResult(key));
+        assertEquals(1, restarted.getResultHits());
+        assertNull(restarted.getResult("missing"));
+        assertEquals(1, restarted.getResultMisses());
+    }
+
+    @Test
+    void testDiskIsEvictedToItsBudget() throws IOException {
+        // no memory tier, so that every lookup reads the disk.
+        ConversionCache cache = new ConversionCache(0, 0, directory,
+                3 * RESULT_LENGTH);
+        for (int k = 0; k < 3; k++) {
+            cache.putResult("key" + k, result(k));
+        }
+        assertEquals(3 * RESULT_LENGTH, cache.getDiskBytes());
+        assertEquals(result(0), cache.getResult("key0"));
+
+        cache.putResult("key3", result(3));
+        assertEquals(1, cache.getDiskEvictions());
+        assertFalse(Files.exists(directory.resolve("key1.txt")));
+        assertNull(cache.getResult("key1"));
+        assertEquals(3 * RESULT_LENGTH, cache.getDiskBytes());
+
+        // a result larger than the whole budget is not written.
+        cache.putResult("large", result(4).repeat(4));
+        assertFalse(Files.exists(directory.resolve("large.txt")));
+        assertEquals(1, cache.getDiskEvictions());
+
+        // a smaller budget trims the files found on start.
+        ConversionCache smaller = new ConversionCache(0, 0, directory,
+                2 * RESULT_LENGTH);
+        assertEquals(1, smaller.getDiskEvictions());
+        assertEquals(2 * RESULT_LENGTH, smaller.getDiskBytes());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        assertTrue(smaller.toJson().contains(
+                "\"diskEvictions\":1,\"diskBytes\":" + 2 * RESULT_LENGTH + "}"));
+    }
+
+    private static String result(int k) {
+        return String.valueOf((char) ('a' + k)).repeat(RESULT_LENGTH);
+    }
+}
@@ -0,0 +1,473 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.Image;
+import image.ImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-running local conversion service over HTTP, so that a warm JVM,
+ * warm glyphs and warm matchers are shared by every conversion.
+ * <ul>
+ * <li>{@code POST /convert?res=N&chars=STRING&format=html|text} with the
+ * image bytes as the body answers with the ASCII art.</li>
+ * <li>{@code GET /stats} answers with latency percentiles as JSON.</li>
+ * <li>{@code GET /cache} answers with the counters of the
+ * {@link ConversionCache} as JSON.</li>
+ * </ul>
+ * Requests are handled on virtual threads when the JVM has them, and on a
+ * bounded pool otherwise. Small images are queued and gathered in batches;
+ * the jobs of a batch over the same image and resolution are converted
+ * together, by one task of a separate pool sized to the cores, so that the
+ * image is decoded once and each distinct result rendered once, and waiting
+ * request threads never starve the conversions. One SubImgCharMatcher is kept
+ * per charset, for the MAX_MATCHERS most recently used charsets. Results and
+ * brightness grids are looked up in a ConversionCache first, so a repeated
+ * conversion is a single lookup and a known image is never decoded again.
+ * Bodies larger than MAX_BODY_BYTES are refused.
+ * The server binds to the loopback address only.
+ */
+public class ConversionServer {
+
+    // constants
+    private static final String CONVERT_PATH = "/convert";
+    private static final String STATS_PATH = "/stats";
+    private static final String CACHE_PATH = "/cache";
+    private static final String RES_PARAM = "res";
+    private static final String CHARS_PARAM = "chars";
+    private static final String FORMAT_PARAM = "format";
+    private static final String HTML_FORMAT = "html";
+    private static final String TEXT_FORMAT = "text";
+    private static final String DEFAULT_CHAR_SET = "0123456789";
+    private static final String DEFAULT_FONT = "Courier New";
+    private static final int DEFAULT_RES = 128;
+    private static final int DEFAULT_PORT = 8080;
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_BAD_METHOD = 405;
+    private static final int HTTP_TOO_LARGE = 413;
+    // requests with bodies up to this size are batched.
+    private static final int SMALL_REQUEST_BYTES = 64 * 1024;
+    private static final int MAX_BATCH_SIZE = 32;
+    // how long a batch waits for company after its first request.
+    private static final long BATCH_WINDOW_MICROS = 500;
+    private static final int LATENCY_WINDOW = 8192;
+    private static final long DEFAULT_RESULT_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_GRID_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_DISK_CACHE_BYTES = 1024L * 1024 * 1024;
+    // the number of charsets whose matchers are kept.
+    static final int MAX_MATCHERS = 64;
+    // the largest image body accepted.
+    static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ExecutorService batchExecutor;
+    private final Thread batcher;
+    private final BlockingQueue<ConversionJob> smallJobs = new LinkedBlockingQueue<>();
+    // in access order; guarded by itself.
+    private final LinkedHashMap<String, SubImgCharMatcher> matchers =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private final LatencyRecorder latencies = new LatencyRecorder(LATENCY_WINDOW);
+    private final ConversionCache cache;
+
+    /**
+     * Creates a server on the given loopback port; 0 picks a free port.
+     *
+     * @param port the port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    public ConversionServer(int port) throws IOException {
+        this(port, new ConversionCache(DEFAULT_RESULT_CACHE_BYTES,
+                DEFAULT_GRID_CACHE_BYTES));
+    }
+
+    /**
+     * Creates a server on the given loopback port, converting through the
+     * given cache; 0 picks a free port.
+     *
+     * @param port  the port to listen on
+     * @param cache the cache of results and brightness grids
+     * @throws IOException if the port cannot be bound
+     */
+    public ConversionServer(int port, ConversionCache cache) throws IOException {
+        this.cache = cache;
+        server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        requestExecutor = createRequestExecutor();
+        batchExecutor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        server.setExecutor(requestExecutor);
+        server.createContext(CONVERT_PATH, this::handleConvert);
+        server.createContext(STATS_PATH, this::handleStats);
+        server.createContext(CACHE_PATH, this::handleCache);
+        batcher = new Thread(this::runBatcher, "conversion-batcher");
+        batcher.setDaemon(true);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        batcher.start();
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting for no more than the given delay for
+     * exchanges in progress.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        batcher.interrupt();
+        requestExecutor.shutdownNow();
+        batchExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        long startTime = System.nanoTime();
+        try (exchange) {
+            if (!exchange.getRequestURI().getPath().equals(CONVERT_PATH)) {
+                send(exchange, HTTP_NOT_FOUND, "Not found.", TEXT_FORMAT);
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, HTTP_BAD_METHOD, "Use POST.", TEXT_FORMAT);
+                return;
+            }
+            ConversionJob job;
+            try (InputStream body = exchange.getRequestBody()) {
+                byte[] imageBytes = body.readNBytes(MAX_BODY_BYTES + 1);
+                if (imageBytes.length > MAX_BODY_BYTES) {
+                    send(exchange, HTTP_TOO_LARGE, "Image too large.", TEXT_FORMAT);
+                    return;
+                }
+                job = new ConversionJob(imageBytes,
+                        parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException e) {
+                send(exchange, HTTP_BAD_REQUEST, e.getMessage(), TEXT_FORMAT);
+                return;
+            }
+
+            String result;
+            try {
+                if (job.imageBytes.length <= SMALL_REQUEST_BYTES) {
+                    smallJobs.add(job);
+                } else {
+                    convertGroup(List.of(job));
+                }
+                result = job.result.get();
+            } catch (ExecutionException e) {
+                send(exchange, HTTP_BAD_REQUEST,
+                        String.valueOf(e.getCause().getMessage()), TEXT_FORMAT);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            send(exchange, HTTP_OK, result, job.format);
+        } finally {
+            latencies.record(System.nanoTime() - startTime);
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        sendJson(exchange, STATS_PATH, latencies.toJson());
+    }
+
+    private void handleCache(HttpExchange exchange) throws IOException {
+        sendJson(exchange, CACHE_PATH, cache.toJson());
+    }
+
+    private static void sendJson(HttpExchange exchange, String path, String json)
+            throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestURI().getPath().equals(path)) {
+                send(exchange, HTTP_NOT_FOUND, "Not found.", TEXT_FORMAT);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(HTTP_OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /*
+     * Gathers queued small jobs into batches, and hands each group of jobs
+     * over the same image and resolution to a task of its own.
+     */
+    private void runBatcher() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<ConversionJob> batch = new ArrayList<>();
+                batch.add(smallJobs.take());
+                long deadline = System.nanoTime()
+                        + TimeUnit.MICROSECONDS.toNanos(BATCH_WINDOW_MICROS);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    ConversionJob job = smallJobs.poll(
+                            deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (job == null) {
+                        break;
+                    }
+                    batch.add(job);
+                }
+                for (List<ConversionJob> group : groupByImage(batch)) {
+                    batchExecutor.execute(() -> convertGroup(group));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Splits jobs into groups over the same image and resolution, in the
+     * order of their first job. Package visible for the tests.
+     */
+    static List<List<ConversionJob>> groupByImage(List<ConversionJob> jobs) {
+        Map<String, List<ConversionJob>> groups = new LinkedHashMap<>();
+        for (ConversionJob job : jobs) {
+            groups.computeIfAbsent(job.gridKey, key -> new ArrayList<>()).add(job);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /*
+     * Completes jobs over the same image and resolution. The brightness grid
+     * is looked up, or decoded, at most once for all of them, and each
+     * distinct result is looked up, or rendered, once and shared by the jobs
+     * asking for it. A failure completes every job still open.
+     * Package visible for the tests.
+     */
+    void convertGroup(List<ConversionJob> jobs) {
+        Map<String, List<ConversionJob>> sameResults = new LinkedHashMap<>();
+        for (ConversionJob job : jobs) {
+            sameResults.computeIfAbsent(job.resultKey, key -> new ArrayList<>())
+                    .add(job);
+        }
+        try {
+            double[][] brightnessGrid = null;
+            for (List<ConversionJob> sameResult : sameResults.values()) {
+                ConversionJob job = sameResult.get(0);
+                String result = cache.getResult(job.resultKey);
+                if (result == null) {
+                    if (brightnessGrid == null) {
+                        brightnessGrid = getBrightnessGrid(job);
+                    }
+                    result = render(job, brightnessGrid);
+                    cache.putResult(job.resultKey, result);
+                }
+                for (ConversionJob sameJob : sameResult) {
+                    sameJob.result.complete(result);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ConversionJob job : jobs) {
+                job.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private double[][] getBrightnessGrid(ConversionJob job) throws IOException {
+        double[][] brightnessGrid =
+                cache.getBrightnessGrid(job.imageDigest, job.resolution);
+        if (brightnessGrid == null) {
+            brightnessGrid = computeBrightnessGrid(job);
+            cache.putBrightnessGrid(job.imageDigest, job.resolution, brightnessGrid);
+        }
+        return brightnessGrid;
+    }
+
+    private String render(ConversionJob job, double[][] brightnessGrid) {
+        char[][] chars = new AsciiArtAlgorithm(brightnessGrid,
+                getMatcher(job.charSet)).run();
+
+        StringWriter writer = new StringWriter();
+        AsciiOutput output = job.format.equals(HTML_FORMAT)
+                ? new HtmlAsciiOutput(writer, DEFAULT_FONT)
+                : new ConsoleAsciiOutput(writer);
+        output.out(chars);
+        return writer.toString();
+    }
+
+    /*
+     * Returns the matcher of a charset, dropping the least recently used
+     * matchers beyond MAX_MATCHERS. A new matcher is built outside of the
+     * lock, as rendering its glyphs is slow.
+     */
+    private SubImgCharMatcher getMatcher(String charSet) {
+        synchronized (matchers) {
+            SubImgCharMatcher matcher = matchers.get(charSet);
+            if (matcher != null) {
+                return matcher;
+            }
+        }
+        SubImgCharMatcher matcher = new SubImgCharMatcher(charSet.toCharArray());
+        synchronized (matchers) {
+            SubImgCharMatcher previous = matchers.putIfAbsent(charSet, matcher);
+            Iterator<SubImgCharMatcher> eldest = matchers.values().iterator();
+            while (matchers.size() > MAX_MATCHERS) {
+                eldest.next();
+                eldest.remove();
+            }
+            return (previous != null) ? previous : matcher;
+        }
+    }
+
+    // the number of charsets whose matchers are kept.
+    int getMatcherCount() {
+        synchronized (matchers) {
+            return matchers.size();
+        }
+    }
+
+    private static double[][] computeBrightnessGrid(ConversionJob job)
+            throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(job.imageBytes));
+        if (decoded == null) {
+            throw new IOException("Unsupported image format.");
+        }
+        Image image = ImageManager.imagePadding(new Image(decoded));
+        if (job.resolution > image.getWidth() || job.resolution > image.getHeight()) {
+            throw new IllegalArgumentException("Resolution exceeds image boundaries.");
+        }
+        return ImageManager.getBrightnessGrid(image, job.resolution);
+    }
+
+    private static void send(HttpExchange exchange, int status, String text,
+                             String format) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                (format.equals(HTML_FORMAT) ? "text/html" : "text/plain")
+                        + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equalsIdx = pair.indexOf('=');
+            if (equalsIdx > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equalsIdx),
+                                StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equalsIdx + 1),
+                                StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    /*
+     * Virtual threads when the running JVM offers them (looked up
+     * reflectively, as the code targets Java 17), a bounded pool otherwise.
+     */
+    private static ExecutorService createRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors() * 2);
+        }
+    }
+
+    /**
+     * Usage: ConversionServer [port [cacheDirectory [cacheMegabytes]]]. With a
+     * directory, the converted results are also cached on disk, across
+     * restarts, within the given size (1024 MB by default).
+     */
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ConversionCache cache = (args.length > 1)
+                ? new ConversionCache(DEFAULT_RESULT_CACHE_BYTES,
+                        DEFAULT_GRID_CACHE_BYTES, Paths.get(args[1]),
+                        (args.length > 2) ? Long.parseLong(args[2]) * 1024 * 1024
+                                : DEFAULT_DISK_CACHE_BYTES)
+                : new ConversionCache(DEFAULT_RESULT_CACHE_BYTES,
+                        DEFAULT_GRID_CACHE_BYTES);
+        ConversionServer conversionServer = new ConversionServer(port, cache);
+        conversionServer.start();
+        System.out.printf("Listening on http://localhost:%d%s%n",
+                conversionServer.getPort(), CONVERT_PATH);
+    }
+
+    // a requested conversion; package visible for the tests.
+    static final class ConversionJob {
+        private final byte[] imageBytes;
+        private final int resolution;
+        private final String charSet;
+        private final String format;
+        private final String imageDigest;
+        private final String gridKey;
+        private final String resultKey;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        ConversionJob(byte[] imageBytes, Map<String, String> params) {
+            this.imageBytes = imageBytes;
+            try {
+                this.resolution = Integer.parseInt(params.getOrDefault(RES_PARAM,
+                        String.valueOf(DEFAULT_RES)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid resolution.");
+            }
+            this.charSet = params.getOrDefault(CHARS_PARAM, DEFAULT_CHAR_SET);
+            this.format = params.getOrDefault(FORMAT_PARAM, HTML_FORMAT);
+            if (resolution < 1 || charSet.isEmpty()
+                    || !(format.equals(HTML_FORMAT) || format.equals(TEXT_FORMAT))) {
+                throw new IllegalArgumentException("Invalid parameters.");
+            }
+            // hashed on the request thread, so the batcher never waits for it.
+            this.imageDigest = ConversionCache.digest(imageBytes);
+            this.gridKey = imageDigest + ':' + resolution;
+            this.resultKey = ConversionCache.resultKey(imageDigest, resolution,
+                    charSet, DEFAULT_FONT, format);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package ascii_art;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversionServerTest {
+
+    private ConversionServer server;
+    private ConversionCache cache;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cache = new ConversionCache(1 << 20, 1 << 20);
+        server = new ConversionServer(0, cache);
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testConvertReturnsConsoleLayout() throws Exception {
+        HttpResponse<String> response = client.send(
+                convertRequest(createImage(16, 16), "res=4&chars=ab&format=text"),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        String[] rows = response.body().split(System.lineSeparator());
+        assertEquals(4, rows.length);
+        // every char is followed by a space, like on the console
+        assertEquals(8, rows[0].length());
+    }
+
+    @Test
+    void testConcurrentSmallRequestsAreAllAnswered() throws Exception {
+        byte[] image = createImage(32, 32);
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(client.sendAsync(convertRequest(image, "res=8"),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+            assertTrue(response.get().body().startsWith("<!DOCTYPE html>"));
+        }
+
+        HttpResponse<String> stats = client.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + server.getPort() + "/stats"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, stats.statusCode());
+        // latencies are recorded once a response is sent, so a few may be missing
+        assertTrue(stats.body().matches("\\{\"count\":\\d+,.*\"p50\":.*\"p99\":.*"));
+    }
+
+    @Test
+    void testInvalidRequests() throws Exception {
+        HttpResponse<String> notAnImage = client.send(
+                convertRequest(new byte[]{1, 2, 3}, "res=4"),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, notAnImage.statusCode());
+
+        HttpResponse<String> tooFine = client.send(
+                convertRequest(createImage(16, 16), "res=64"),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, tooFine.statusCode());
+    }
+
+    @Test
+    void testRepeatedConversionsAreCached() throws Exception {
+        byte[] image = createImage(32, 32);
+        String first = client.send(convertRequest(image, "res=8&chars=ab"),
+                HttpResponse.BodyHandlers.ofString()).body();
+        String second = client.send(convertRequest(image, "res=8&chars=ab"),
+                HttpResponse.BodyHandlers.ofString()).body();
+
+        assertEquals(first, second);
+        assertEquals(1, cache.getResultHits());
+        assertEquals(1, cache.getResultMisses());
+
+        // another charset is a new result over the same brightness grid
+        String otherCharset = client.send(convertRequest(image, "res=8&chars=xy"),
+                HttpResponse.BodyHandlers.ofString()).body();
+        assertNotEquals(first, otherCharset);
+        assertEquals(2, cache.getResultMisses());
+        assertEquals(1, cache.getGridHits());
+        assertEquals(1, cache.getGridMisses());
+
+        HttpResponse<String> stats = client.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + server.getPort() + "/cache"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertTrue(stats.body().startsWith("{\"results\":{\"hits\":1,"));
+    }
+
+    @Test
+    void testOnlyExactPathsAreServed() throws Exception {
+        HttpResponse<String> convert = client.send(HttpRequest.newBuilder(URI.create(
+                        "http://localhost:" + server.getPort() + "/convert/more?res=4"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(createImage(16, 16)))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(404, convert.statusCode());
+
+        HttpResponse<String> stats = client.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + server.getPort() + "/stats/more"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(404, stats.statusCode());
+    }
+
+    @Test
+    void testStatsAreJsonInAnyLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            LatencyRecorder recorder = new LatencyRecorder(4);
+            recorder.record(1_234_567);
+            assertEquals("{\"count\":1,\"window\":1,\"p50\":1.235,"
+                    + "\"p90\":1.235,\"p99\":1.235,\"max\":1.235}", recorder.toJson());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    void testMatchersAreBounded() throws Exception {
+        byte[] image = createImage(16, 16);
+        for (int i = 0; i < ConversionServer.MAX_MATCHERS + 8; i++) {
+            String charSet = "ab" + i;
+            HttpResponse<String> response = client.send(
+                    convertRequest(image, "res=4&format=text&chars=" + charSet),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+        }
+        assertEquals(ConversionServer.MAX_MATCHERS, server.getMatcherCount());
+    }
+
+    @Test
+    void testGroupSharesTheGridAndEqualResults() throws Exception {
+        byte[] image = createImage(32, 32);
+        List<ConversionServer.ConversionJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            jobs.add(new ConversionServer.ConversionJob(image, Map.of(
+                    "res", "8", "chars", (i % 2 == 0) ? "ab" : "xy")));
+        }
+        server.convertGroup(jobs);
+
+        // one decoded grid, and one rendering per charset.
+        assertEquals(1, cache.getGridMisses());
+        assertEquals(0, cache.getGridHits());
+        assertEquals(2, cache.getResultMisses());
+        assertEquals(2, server.getMatcherCount());
+        for (int i = 0; i < jobs.size(); i++) {
+            String expected = client.send(convertRequest(image,
+                            "res=8&chars=" + ((i % 2 == 0) ? "ab" : "xy")),
+                    HttpResponse.BodyHandlers.ofString()).body();
+            assertEquals(expected, jobs.get(i).result.get());
+        }
+    }
+
+    @Test
+    void testGroupFailureCompletesEveryJob() {
+        List<ConversionServer.ConversionJob> jobs = List.of(
+                new ConversionServer.ConversionJob(new byte[]{1, 2}, Map.of("chars", "ab")),
+                new ConversionServer.ConversionJob(new byte[]{1, 2}, Map.of("chars", "xy")));
+        server.convertGroup(jobs);
+
+        for (ConversionServer.ConversionJob job : jobs) {
+            assertTrue(job.result.isCompletedExceptionally());
+        }
+        assertEquals(1, cache.getGridMisses());
+    }
+
+    @Test
+    void testBatchesAreGroupedByImageAndResolution() throws Exception {
+        byte[] image = createImage(16, 16);
+        byte[] otherImage = createImage(16, 8);
+        List<ConversionServer.ConversionJob> batch = new ArrayList<>();
+        for (byte[] bytes : new byte[][]{image, otherImage, image}) {
+            for (String resolution : new String[]{"2", "4"}) {
+                batch.add(new ConversionServer.ConversionJob(bytes,
+                        Map.of("res", resolution)));
+            }
+        }
+        List<List<ConversionServer.ConversionJob>> groups =
+                ConversionServer.groupByImage(batch);
+
+        assertEquals(4, groups.size());
+        assertEquals(List.of(batch.get(0), batch.get(4)), groups.get(0));
+        assertEquals(List.of(batch.get(1), batch.get(5)), groups.get(1));
+        assertEquals(List.of(batch.get(2)), groups.get(2));
+        assertEquals(List.of(batch.get(3)), groups.get(3));
+    }
+
+    @Test
+    void testLargeBodiesAreRefused() throws Exception {
+        HttpResponse<String> response = client.send(convertRequest(
+                        new byte[ConversionServer.MAX_BODY_BYTES + 1], "res=4"),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(413, response.statusCode());
+    }
+
+    private HttpRequest convertRequest(byte[] image, String query) {
+        return HttpRequest.newBuilder(URI.create(
+                        "http://localhost:" + server.getPort() + "/convert?" + query))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(image))
+                .build();
+    }
+
+    private static byte[] createImage(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                image.setRGB(j, i, (i * 255 / height) * 0x010101);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,19 @@
+package ascii_art;
+
+/**
+ * The ways {@link DitheredAsciiArtAlgorithm} spreads the difference between a
+ * sub-image's brightness and the brightness of its char.
+ */
+public enum DitherMode {
+    /**
+     * Error diffusion: the difference is pushed to the following sub-images,
+     * 7/16 to the right and 3/16, 5/16 and 1/16 to the row below.
+     */
+    FLOYD_STEINBERG,
+    /**
+     * Ordered dithering: each sub-image picks the darker or the brighter of
+     * the two levels around it by comparing its position between them with
+     * a 4x4 Bayer threshold.
+     */
+    ORDERED
+}
@@ -0,0 +1,242 @@
+package ascii_art;
+
+import image_char_matching.SubImgCharMatcher;
+import metrics.Counter;
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The DitheredAsciiArtAlgorithm class converts a brightness grid to ASCII art
+ * while dithering, so that areas whose brightness lies between two chars are
+ * drawn as a mix of both instead of as a band of the nearest one.
+ * <p>
+ * The levels are the normalized brightness levels of the matcher's charset,
+ * however unevenly they are spaced, and a tile whose value is nearest to a
+ * level gets the char the matcher would give it. Without any error to spread,
+ * the result is that of {@link AsciiArtAlgorithm}.
+ * <p>
+ * Floyd-Steinberg dithering can run on several threads as a wavefront: each
+ * row of tiles runs on its own thread and follows two tiles behind the row
+ * above, whose errors it needs. Every error is summed in the same order as
+ * in the sequential run, so the output is identical for any parallelism.
+ */
+public class DitheredAsciiArtAlgorithm {
+
+    // the 4x4 Bayer matrix, thresholds at (value + 0.5) / 16.
+    private static final int[][] BAYER_MATRIX = {
+            {0, 8, 2, 10},
+            {12, 4, 14, 6},
+            {3, 11, 1, 9},
+            {15, 7, 13, 5}};
+    private static final int BAYER_SIZE = BAYER_MATRIX.length;
+    private static final double BAYER_LEVELS = BAYER_SIZE * BAYER_SIZE;
+    private static final double RIGHT_WEIGHT = 7.0 / 16;
+    private static final double BELOW_LEFT_WEIGHT = 3.0 / 16;
+    private static final double BELOW_WEIGHT = 5.0 / 16;
+    private static final double BELOW_RIGHT_WEIGHT = 1.0 / 16;
+    // busy waits this many times before yielding the core.
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final double[][] brightnessGrid;
+    private final DitherMode mode;
+    private final int parallelism;
+    private final int rows;
+    private final int columns;
+    // the levels of the charset in ascending order, and the char of each.
+    private final double[] levels;
+    private final char[] levelChars;
+
+    public DitheredAsciiArtAlgorithm(double[][] brightnessGrid,
+                                     SubImgCharMatcher imageMatcher,
+                                     DitherMode mode) {
+        this(brightnessGrid, imageMatcher, mode, 1);
+    }
+
+    /**
+     * Creates the algorithm over a brightness grid, with the given number of
+     * threads for Floyd-Steinberg dithering. The output is the same for any
+     * parallelism.
+     *
+     * @param brightnessGrid the brightness of each subImage, by row and column
+     * @param imageMatcher   the matcher whose charset and levels are used
+     * @param mode           the dithering mode
+     * @param parallelism    the number of threads; 1 means sequential
+     */
+    public DitheredAsciiArtAlgorithm(double[][] brightnessGrid,
+                                     SubImgCharMatcher imageMatcher,
+                                     DitherMode mode, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        this.brightnessGrid = brightnessGrid;
+        this.mode = mode;
+        this.parallelism = parallelism;
+        this.rows = brightnessGrid.length;
+        this.columns = brightnessGrid[0].length;
+        this.levels = imageMatcher.getBrightnessLevels();
+        this.levelChars = new char[levels.length];
+        for (int k = 0; k < levels.length; k++) {
+            levelChars[k] = imageMatcher.getCharByImageBrightness(levels[k]);
+        }
+    }
+
+    /**
+     * Runs the ASCII art conversion algorithm with dithering.
+     *
+     * @return a 2D array of characters representing the ASCII art
+     */
+    public char[][] run() {
+        PipelineMetrics.startStage(Stage.MATCHING);
+        char[][] resultAsciiImage = new char[rows][columns];
+        if (levels.length == 1) {
+            // a single level leaves no choice, and no error to spread.
+            for (char[] row : resultAsciiImage) {
+                Arrays.fill(row, levelChars[0]);
+            }
+        } else if (mode == DitherMode.ORDERED) {
+            ditherOrdered(resultAsciiImage);
+        } else if (parallelism == 1 || rows == 1) {
+            ditherFloydSteinberg(resultAsciiImage);
+        } else {
+            ditherFloydSteinbergParallel(resultAsciiImage);
+        }
+        PipelineMetrics.add(Counter.TILES_MATCHED, (long) rows * columns);
+        PipelineMetrics.endStage(Stage.MATCHING);
+        return resultAsciiImage;
+    }
+
+    private void ditherOrdered(char[][] resultAsciiImage) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                double brightness = brightnessGrid[i][j];
+                int level = floorLevel(brightness);
+                if (level == levels.length - 1) {
+                    resultAsciiImage[i][j] = levelChars[level];
+                    continue;
+                }
+                double position = (brightness - levels[level])
+                        / (levels[level + 1] - levels[level]);
+                double threshold = (BAYER_MATRIX[i % BAYER_SIZE][j % BAYER_SIZE]
+                        + 0.5) / BAYER_LEVELS;
+                resultAsciiImage[i][j] =
+                        levelChars[position > threshold ? level + 1 : level];
+            }
+        }
+    }
+
+    private void ditherFloydSteinberg(char[][] resultAsciiImage) {
+        double[][] errors = newErrorRows();
+        for (int i = 0; i < rows; i++) {
+            ditherRow(i, errors, null, resultAsciiImage);
+        }
+    }
+
+    /*
+     * One task per row, handed out in order to a pool of parallelism
+     * threads. A row may process column j once the row above has processed
+     * column j + 1, as recorded in progress; earlier rows never wait for
+     * later ones, so the rows that hold the threads can always advance.
+     */
+    private void ditherFloydSteinbergParallel(char[][] resultAsciiImage) {
+        double[][] errors = newErrorRows();
+        AtomicIntegerArray progress = new AtomicIntegerArray(rows);
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(parallelism, rows));
+        try {
+            List<Future<?>> futures = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                int row = i;
+                futures.add(pool.submit(() ->
+                        ditherRow(row, errors, progress, resultAsciiImage)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while dithering.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+     * Matches row i of tiles and spreads its errors. Row i of errors holds
+     * the error carried into row i of tiles from the row above, shifted by
+     * one column so that the errors pushed past the sides of the grid land
+     * in unused cells. The error pushed to the right stays in carry, so that
+     * a row never writes to the cells the row above is still adding to.
+     * Without progress, the row above is known to be done.
+     */
+    private void ditherRow(int i, double[][] errors, AtomicIntegerArray progress,
+                           char[][] resultAsciiImage) {
+        double[] carried = errors[i];
+        double[] below = errors[i + 1];
+        double carry = 0;
+        for (int j = 0; j < columns; j++) {
+            if (progress != null && i > 0) {
+                int needed = Math.min(j + 2, columns);
+                for (int spins = 0; progress.get(i - 1) < needed; spins++) {
+                    if (spins < SPINS_BEFORE_YIELD) {
+                        Thread.onSpinWait();
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }
+            double value = brightnessGrid[i][j] + (carried[j + 1] + carry);
+            int level = nearestLevel(value);
+            resultAsciiImage[i][j] = levelChars[level];
+            double error = value - levels[level];
+            carry = error * RIGHT_WEIGHT;
+            below[j] += error * BELOW_LEFT_WEIGHT;
+            below[j + 1] += error * BELOW_WEIGHT;
+            below[j + 2] += error * BELOW_RIGHT_WEIGHT;
+            if (progress != null) {
+                progress.lazySet(i, j + 1);
+            }
+        }
+    }
+
+    private double[][] newErrorRows() {
+        return new double[rows + 1][columns + 2];
+    }
+
+    /*
+     * The index of the level nearest to value, with ties going to the
+     * smaller char, exactly like SubImgCharMatcher.
+     */
+    private int nearestLevel(double value) {
+        int floor = floorLevel(value);
+        if (floor == levels.length - 1 || value < levels[floor]) {
+            return floor;
+        }
+        double floorDiff = Math.abs(levels[floor] - value);
+        double ceilingDiff = Math.abs(levels[floor + 1] - value);
+        if (floorDiff < ceilingDiff || (floorDiff == ceilingDiff
+                && levelChars[floor] < levelChars[floor + 1])) {
+            return floor;
+        }
+        return floor + 1;
+    }
+
+    // the index of the last level at most value, or 0 below the first level.
+    private int floorLevel(double value) {
+        int k = Arrays.binarySearch(levels, value);
+        if (k >= 0) {
+            return k;
+        }
+        return Math.max(-k - 2, 0);
+    }
+}
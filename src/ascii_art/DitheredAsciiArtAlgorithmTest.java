@@ -0,0 +1,83 @@
+package ascii_art;
+
+import image_char_matching.SubImgCharMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DitheredAsciiArtAlgorithmTest {
+
+    private static final char[] CHAR_SET = "0123456789".toCharArray();
+
+    @Test
+    void testParallelFloydSteinbergMatchesSequential() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHAR_SET);
+        double[][] grid = randomGrid(57, 83);
+
+        char[][] sequential = new DitheredAsciiArtAlgorithm(grid, matcher,
+                DitherMode.FLOYD_STEINBERG).run();
+        for (int parallelism : new int[]{2, 3, 8}) {
+            assertArrayEquals(sequential, new DitheredAsciiArtAlgorithm(grid,
+                    matcher, DitherMode.FLOYD_STEINBERG, parallelism).run());
+        }
+    }
+
+    @Test
+    void testLevelsMatchWithoutError() {
+        // a grid of exact levels has no error to spread
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHAR_SET);
+        double[] levels = matcher.getBrightnessLevels();
+        double[][] grid = new double[levels.length][levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            for (int j = 0; j < levels.length; j++) {
+                grid[i][j] = levels[(i + j) % levels.length];
+            }
+        }
+        char[][] expected = new AsciiArtAlgorithm(grid, matcher).run();
+
+        for (DitherMode mode : DitherMode.values()) {
+            assertArrayEquals(expected,
+                    new DitheredAsciiArtAlgorithm(grid, matcher, mode).run());
+        }
+    }
+
+    @Test
+    void testFlatAreaBetweenLevelsIsMixed() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHAR_SET);
+        double[] levels = matcher.getBrightnessLevels();
+        // a quarter of the way between the first two levels
+        double brightness = levels[0] + (levels[1] - levels[0]) / 4;
+        double[][] grid = new double[32][32];
+        for (double[] row : grid) {
+            Arrays.fill(row, brightness);
+        }
+        char dark = matcher.getCharByImageBrightness(levels[0]);
+        char bright = matcher.getCharByImageBrightness(levels[1]);
+
+        for (DitherMode mode : DitherMode.values()) {
+            int brightCount = 0;
+            for (char[] row : new DitheredAsciiArtAlgorithm(grid, matcher, mode).run()) {
+                for (char c : row) {
+                    assertTrue(c == dark || c == bright);
+                    brightCount += (c == bright) ? 1 : 0;
+                }
+            }
+            // about a quarter of the tiles take the brighter char
+            assertEquals(0.25, brightCount / (32.0 * 32), 0.05, mode.toString());
+        }
+    }
+
+    private static double[][] randomGrid(int rows, int columns) {
+        Random random = new Random(7);
+        double[][] grid = new double[rows][columns];
+        for (double[] row : grid) {
+            for (int j = 0; j < columns; j++) {
+                row[j] = random.nextDouble();
+            }
+        }
+        return grid;
+    }
+}
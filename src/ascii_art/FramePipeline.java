@@ -0,0 +1,130 @@
+package ascii_art;
+
+import image.Image;
+import image.ImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.util.Arrays;
+
+/**
+ * Converts a sequence of equally sized frames to ASCII art, reusing the
+ * matcher and every buffer across frames. A tile whose brightness moved by no
+ * more than the change threshold since its char was last picked keeps that
+ * char, is not matched again, and is reported as unchanged so that outputs
+ * can skip re-emitting it.
+ * <p>
+ * The returned char grid is owned by the pipeline and updated in place by
+ * the next frame.
+ */
+public class FramePipeline {
+
+    private final SubImgCharMatcher imageMatcher;
+    private final int resolution;
+    private final double changeThreshold;
+
+    // allocated on the first frame, then reused.
+    private double[][] brightnessGrid;
+    // the brightness each tile had when its current char was picked.
+    private double[][] emittedBrightnessGrid;
+    private char[][] chars;
+    private boolean[][] changedTiles;
+    private int changedTileCount;
+    private int frameWidth;
+    private int frameHeight;
+
+    /**
+     * @param imageMatcher    the matcher used to pick a char for each tile
+     * @param resolution      the number of chars in a row
+     * @param changeThreshold the brightness difference (0 to 1) under which a
+     *                        tile is considered unchanged; 0 re-matches every
+     *                        tile whose brightness changed at all
+     */
+    public FramePipeline(SubImgCharMatcher imageMatcher, int resolution,
+                         double changeThreshold) {
+        if (changeThreshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative.");
+        }
+        this.imageMatcher = imageMatcher;
+        this.resolution = resolution;
+        this.changeThreshold = changeThreshold;
+    }
+
+    /**
+     * Converts the next frame.
+     *
+     * @param frame the frame, of the same size as every previous frame
+     * @return the char grid of the frame, updated in place on every call
+     */
+    public char[][] nextFrame(Image frame) {
+        Image image = ImageManager.imagePadding(frame);
+        if (chars == null) {
+            firstFrameSetup(frame, image);
+        } else if (frame.getWidth() != frameWidth
+                || frame.getHeight() != frameHeight) {
+            throw new IllegalArgumentException("Frame size changed.");
+        }
+
+        ImageManager.fillBrightnessGrid(image, brightnessGrid);
+        changedTileCount = 0;
+        for (int i = 0; i < chars.length; i++) {
+            for (int j = 0; j < resolution; j++) {
+                double brightness = brightnessGrid[i][j];
+                // written as a negation so that NaN (never emitted) counts as changed.
+                boolean changed = !(Math.abs(brightness
+                        - emittedBrightnessGrid[i][j]) <= changeThreshold);
+                if (changed) {
+                    char c = imageMatcher.getCharByImageBrightness(brightness);
+                    emittedBrightnessGrid[i][j] = brightness;
+                    // a new brightness may still be matched to the same char.
+                    changed = c != chars[i][j];
+                    chars[i][j] = c;
+                }
+                changedTiles[i][j] = changed;
+                if (changed) {
+                    changedTileCount++;
+                }
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Tells whether the char of the given tile changed in the last frame.
+     */
+    public boolean isTileChanged(int row, int col) {
+        return changedTiles[row][col];
+    }
+
+    /**
+     * Returns the grid of tiles whose char changed in the last frame. The
+     * grid is owned by the pipeline and updated in place.
+     */
+    public boolean[][] getChangedTiles() {
+        return changedTiles;
+    }
+
+    /**
+     * Returns the number of tiles whose char changed in the last frame.
+     */
+    public int getChangedTileCount() {
+        return changedTileCount;
+    }
+
+    private void firstFrameSetup(Image frame, Image image) {
+        if (resolution > image.getWidth() || resolution > image.getHeight()) {
+            throw new IllegalArgumentException(
+                    "Resolution exceeds image boundaries.");
+        }
+        frameWidth = frame.getWidth();
+        frameHeight = frame.getHeight();
+        int rows = ImageManager.countVertiaclSubImages(image, resolution);
+        brightnessGrid = new double[rows][resolution];
+        emittedBrightnessGrid = new double[rows][resolution];
+        chars = new char[rows][resolution];
+        changedTiles = new boolean[rows][resolution];
+        // no char was emitted yet: every tile of the first frame changes.
+        for (double[] row : emittedBrightnessGrid) {
+            Arrays.fill(row, Double.NaN);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ascii_art;
+
+import image.Image;
+import image.ImageManager;
+import image_char_matching.SubImgCharMatcher;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FramePipelineTest {
+
+    private static final char[] CHAR_SET = "0123456789@#%.:".toCharArray();
+    private static final int SIZE = 32;
+    private static final int RESOLUTION = 8;
+    private static final int TILE_SIZE = SIZE / RESOLUTION;
+    private static final int FRAMES = 24;
+
+    @Test
+    void testZeroThresholdMatchesTheAlgorithm() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHAR_SET);
+        FramePipeline pipeline = new FramePipeline(matcher, RESOLUTION, 0);
+        char[][] previous = null;
+        char[][] chars = null;
+        for (int f = 0; f < FRAMES; f++) {
+            Image frame = createFrame(f);
+            char[][] next = pipeline.nextFrame(frame);
+            if (chars != null) {
+                assertSame(chars, next);
+            }
+            chars = next;
+            char[][] expected = convert(frame, matcher);
+
+            int changedTileCount = 0;
+            for (int i = 0; i < RESOLUTION; i++) {
+                assertArrayEquals(expected[i], chars[i], "frame " + f);
+                for (int j = 0; j < RESOLUTION; j++) {
+                    boolean changed = previous == null
+                            || previous[i][j] != expected[i][j];
+                    assertEquals(changed, pipeline.isTileChanged(i, j));
+                    if (changed) {
+                        changedTileCount++;
+                    }
+                }
+            }
+            assertEquals(changedTileCount, pipeline.getChangedTileCount());
+            previous = expected;
+        }
+    }
+
+    @Test
+    void testTilesWithinTheThresholdKeepTheirChar() {
+        double threshold = 0.05;
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHAR_SET);
+        FramePipeline pipeline = new FramePipeline(matcher, RESOLUTION, threshold);
+        // the brightness and char of each tile when its char was last picked.
+        double[][] emittedBrightness = new double[RESOLUTION][RESOLUTION];
+        char[][] emitted = new char[RESOLUTION][RESOLUTION];
+        int skippedTiles = 0;
+        for (int f = 0; f < FRAMES; f++) {
+            Image frame = createFrame(f);
+            char[][] chars = pipeline.nextFrame(frame);
+            char[][] expected = convert(frame, matcher);
+            double[][] brightness = ImageManager.getBrightnessGrid(
+                    ImageManager.imagePadding(frame), RESOLUTION);
+
+            int changedTileCount = 0;
+            for (int i = 0; i < RESOLUTION; i++) {
+                for (int j = 0; j < RESOLUTION; j++) {
+                    boolean changed = false;
+                    if (f == 0 || Math.abs(brightness[i][j]
+                            - emittedBrightness[i][j]) > threshold) {
+                        changed = f == 0 || emitted[i][j] != expected[i][j];
+                        emitted[i][j] = expected[i][j];
+                        emittedBrightness[i][j] = brightness[i][j];
+                    } else if (emitted[i][j] != expected[i][j]) {
+                        skippedTiles++;
+                    }
+                    assertEquals(emitted[i][j], chars[i][j],
+                            "frame " + f + " tile " + i + "," + j);
+                    assertEquals(changed, pipeline.isTileChanged(i, j));
+                    if (changed) {
+                        changedTileCount++;
+                    }
+                }
+            }
+            assertEquals(changedTileCount, pipeline.getChangedTileCount());
+        }
+        // the frames do move tiles within the threshold to other chars.
+        assertTrue(skippedTiles > 0);
+    }
+
+    @Test
+    void testInvalidFrames() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHAR_SET);
+        assertThrows(IllegalArgumentException.class,
+                () -> new FramePipeline(matcher, RESOLUTION, -0.1));
+
+        FramePipeline pipeline = new FramePipeline(matcher, RESOLUTION, 0);
+        pipeline.nextFrame(createFrame(0));
+        assertThrows(IllegalArgumentException.class, () -> pipeline.nextFrame(
+                new Image(new int[SIZE * SIZE / 2], SIZE, SIZE / 2)));
+    }
+
+    private static char[][] convert(Image frame, SubImgCharMatcher matcher) {
+        return new AsciiArtAlgorithm(ImageManager.imagePadding(frame), RESOLUTION,
+                matcher).run();
+    }
+
+    /*
+     * Frames of uniform grey tiles: the left half drifts slowly brighter,
+     * the right half jumps around.
+     */
+    private static Image createFrame(int f) {
+        int[] pixels = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int tile = (y / TILE_SIZE) * RESOLUTION + x / TILE_SIZE;
+                int grey = (x < SIZE / 2)
+                        ? (tile * 29 + f * 3) % 256
+                        : (tile * 53 + f * f * 41) % 256;
+                pixels[y * SIZE + x] = 0xFF000000 | grey * 0x010101;
+            }
+        }
+        return new Image(pixels, SIZE, SIZE);
+    }
+}
@@ -0,0 +1,52 @@
+package ascii_art;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+ * Keeps the latencies of the last requests in a ring buffer and reports
+ * their percentiles. Thread-safe.
+ */
+class LatencyRecorder {
+    private static final double NANOS_IN_MILLI = 1e6;
+
+    private final long[] latencies;
+    private long count = 0;
+
+    LatencyRecorder(int capacity) {
+        this.latencies = new long[capacity];
+    }
+
+    synchronized void record(long nanos) {
+        latencies[(int) (count % latencies.length)] = nanos;
+        count++;
+    }
+
+    /*
+     * Returns the statistics as a JSON object, with latencies in milliseconds.
+     * Numbers are formatted in the root locale, as JSON requires.
+     */
+    String toJson() {
+        long[] window;
+        long total;
+        synchronized (this) {
+            total = count;
+            window = Arrays.copyOf(latencies, (int) Math.min(count, latencies.length));
+        }
+        Arrays.sort(window);
+        return String.format(Locale.ROOT, "{\"count\":%d,\"window\":%d,\"p50\":%.3f,"
+                        + "\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                total, window.length, percentile(window, 0.5),
+                percentile(window, 0.9), percentile(window, 0.99),
+                percentile(window, 1));
+    }
+
+    // nearest-rank percentile of sorted latencies, in milliseconds.
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / NANOS_IN_MILLI;
+    }
+}
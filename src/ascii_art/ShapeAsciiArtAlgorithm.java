@@ -0,0 +1,70 @@
+package ascii_art;
+
+import image.Image;
+import image.ImageManager;
+import image_char_matching.ShapeCharMatcher;
+import metrics.Counter;
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
+/**
+ * The ShapeAsciiArtAlgorithm class converts an image to ASCII art whose chars
+ * follow the edges of the image, using a {@link ShapeCharMatcher}.
+ * Flat subImages get the same chars as with {@link AsciiArtAlgorithm}.
+ */
+public class ShapeAsciiArtAlgorithm {
+
+    private final Image image;
+    private final int resolution;
+    private final int subImageSize;
+    private final ShapeCharMatcher imageMatcher;
+    // the brightness of each subImage, for the flat ones.
+    private final double[][] brightnessGrid;
+
+    public ShapeAsciiArtAlgorithm(Image image, int resolution,
+                                  ShapeCharMatcher imageMatcher) {
+        this(image, ImageManager.getBrightnessGrid(image, resolution), imageMatcher);
+    }
+
+    /**
+     * Creates the algorithm over an already computed brightness grid of the
+     * image, for example one computed together with the subImage colours.
+     *
+     * @param image          the (padded) image to convert
+     * @param brightnessGrid the brightness of each subImage, by row and column
+     * @param imageMatcher   the matcher used to pick a char for each subImage
+     */
+    public ShapeAsciiArtAlgorithm(Image image, double[][] brightnessGrid,
+                                  ShapeCharMatcher imageMatcher) {
+        this.image = image;
+        this.resolution = brightnessGrid[0].length;
+        this.subImageSize = image.getWidth() / resolution;
+        this.imageMatcher = imageMatcher;
+        this.brightnessGrid = brightnessGrid;
+    }
+
+    /**
+     * Runs the ASCII art conversion algorithm.
+     *
+     * @return a 2D array of characters representing the ASCII art
+     */
+    public char[][] run() {
+        PipelineMetrics.startStage(Stage.MATCHING);
+        // subImages smaller than the glyphs are matched at their own size.
+        int side = Math.min(subImageSize, ShapeCharMatcher.SHAPE_RESOLUTION);
+        int[] greyscale = new int[side * side];
+        char[][] resultAsciiImage = new char[brightnessGrid.length][resolution];
+        for (int i = 0; i < brightnessGrid.length; i++) {
+            for (int j = 0; j < resolution; j++) {
+                ImageManager.getTileGreyscale(image, i * subImageSize,
+                        j * subImageSize, subImageSize, greyscale, side);
+                resultAsciiImage[i][j] = imageMatcher.getCharByShape(greyscale,
+                        side, brightnessGrid[i][j]);
+            }
+        }
+        PipelineMetrics.add(Counter.TILES_MATCHED,
+                (long) brightnessGrid.length * resolution);
+        PipelineMetrics.endStage(Stage.MATCHING);
+        return resultAsciiImage;
+    }
+}
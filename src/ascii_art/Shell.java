@@ -1,13 +1,19 @@
 package ascii_art;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.TreeSet;
 import java.util.Arrays;
 
+import ascii_output.ConsoleAsciiOutput;
 import image.Image;
 import image.ImageManager;
+import image.BrightnessPyramid;
+import image_char_matching.GlyphCache;
 import image_char_matching.SubImgCharMatcher;
 
 
@@ -15,6 +21,7 @@ public class Shell {
 
     // constants
     private static final int IMAGE_PATH_INDEX = 0;
+    private static final int GLYPH_CACHE_INDEX = 1;
     private static final int COMMAND_IDX = 0;
     private static final int ARG1_IDX = 1;
     private static final String COMMAND_PREFIX = ">>> ";
@@ -27,6 +34,10 @@ public class Shell {
     private static final String CHANGE_OUTPUT_COMMAND = "output";
     private static final String ROUND_METHOD_COMMAND = "round";
     private static final String RUN_ALGORITHM_COMMAND = "asciiArt";
+    private static final String DITHER_COMMAND = "dither";
+    private static final String NO_DITHER = "none";
+    private static final String FLOYD_STEINBERG_DITHER = "fs";
+    private static final String ORDERED_DITHER = "ordered";
     private static final char[] DEFAULT_CHAR_SET = {'1', '2', '3', '4', '5', '6', '7', '8', '9', '0'};
     private static final int DEFAULT_RES = 2;
     private static final String ABS_ROUND_METHOD = "abs";
@@ -34,11 +45,18 @@ public class Shell {
     // attributes
     private int resolution = DEFAULT_RES;
     private String round_method = ABS_ROUND_METHOD;
+    // null for no dithering.
+    private DitherMode ditherMode;
 
     private final SubImgCharMatcher subImgCharMatcher;
     private AsciiArtAlgorithm asciiArtAlgorithm;
     // Image is padded from the beginning.
     private Image image;
+    // computed once per image, so changing resolution needs no pixel access.
+    private BrightnessPyramid brightnessPyramid;
+    // reused by every asciiArt command, grown when the resolution goes up.
+    private final ConsoleAsciiOutput consoleOutput = new ConsoleAsciiOutput();
+    private char[] renderBuffer = new char[0];
 
     public Shell() {
         subImgCharMatcher = new SubImgCharMatcher(DEFAULT_CHAR_SET);
@@ -47,7 +65,9 @@ public class Shell {
     private void imageHandling(String imagePath) throws IOException {
         image = new Image(imagePath);
         image = ImageManager.imagePadding(image);
-        asciiArtAlgorithm = new AsciiArtAlgorithm(image, DEFAULT_RES,
+        brightnessPyramid = new BrightnessPyramid(image);
+        asciiArtAlgorithm = new AsciiArtAlgorithm(
+                brightnessPyramid.getBrightnessGrid(DEFAULT_RES),
                 subImgCharMatcher);
     }
 
@@ -74,10 +94,10 @@ public class Shell {
                     System.out.println("SHOW_CHARS_COMMAND");
                     break;
                 case ADD_CHAR_COMMAND:
-                    System.out.println("ADD_CHAR_COMMAND");
+                    changeCharSet(userInput, true);
                     break;
                 case REMOVE_CHAR_COMMAND:
-                    System.out.println("REMOVE_CHAR_COMMAND");
+                    changeCharSet(userInput, false);
                     break;
                 case CHANGE_RES_COMMAND:
                     if (userInput.length == 1) {
@@ -93,8 +113,15 @@ public class Shell {
                 case ROUND_METHOD_COMMAND:
                     System.out.println("ROUND_METHOD_COMMAND");
                     break;
+                case DITHER_COMMAND:
+                    changeDitherMode(userInput);
+                    break;
                 case RUN_ALGORITHM_COMMAND:
-                    System.out.println("RUN_ALGORITHM_COMMAND");
+                    if (ditherMode == null) {
+                        renderAsciiArt();
+                    } else {
+                        renderDitheredAsciiArt();
+                    }
                     break;
                 default:
                     System.out.println("Invalid command");
@@ -104,6 +131,61 @@ public class Shell {
 
     }
 
+    // only subImages affected by charset changes are matched again.
+    private void renderAsciiArt() {
+        int rows = asciiArtAlgorithm.getRows();
+        int columns = asciiArtAlgorithm.getColumns();
+        if (renderBuffer.length < rows * columns) {
+            renderBuffer = new char[rows * columns];
+        }
+        asciiArtAlgorithm.run(renderBuffer, 0, columns);
+        consoleOutput.out(renderBuffer, 0, rows, columns, columns);
+    }
+
+    // dithering matches every subImage again, on every core.
+    private void renderDitheredAsciiArt() {
+        consoleOutput.out(new DitheredAsciiArtAlgorithm(
+                brightnessPyramid.getBrightnessGrid(resolution), subImgCharMatcher,
+                ditherMode, Runtime.getRuntime().availableProcessors()).run());
+    }
+
+    private void changeDitherMode(String[] userInput) {
+        String mode = (userInput.length == 1) ? "" : userInput[ARG1_IDX];
+        switch (mode) {
+            case NO_DITHER:
+                ditherMode = null;
+                break;
+            case FLOYD_STEINBERG_DITHER:
+                ditherMode = DitherMode.FLOYD_STEINBERG;
+                break;
+            case ORDERED_DITHER:
+                ditherMode = DitherMode.ORDERED;
+                break;
+            default:
+                System.out.println("Did not change dithering due to incorrect format.");
+                return;
+        }
+        System.out.printf("Dithering set to %s.\n", mode);
+    }
+
+    private void changeCharSet(String[] userInput, boolean add) {
+        if (userInput.length == 1 || userInput[ARG1_IDX].length() != 1) {
+            System.out.printf("Did not %s due to incorrect format.\n",
+                    add ? ADD_CHAR_COMMAND : REMOVE_CHAR_COMMAND);
+            return;
+        }
+        char c = userInput[ARG1_IDX].charAt(0);
+        if (add) {
+            subImgCharMatcher.addChar(c);
+        } else if (subImgCharMatcher.getCharCount() == 1
+                && subImgCharMatcher.containsChar(c)) {
+            System.out.printf("Did not %s due to an empty charset.\n",
+                    REMOVE_CHAR_COMMAND);
+        } else {
+            subImgCharMatcher.removeChar(c);
+        }
+    }
+
     private void changeResolution(String changeFactor) {
         // increase resolution
         if (changeFactor.equals("up")) {
@@ -125,7 +207,8 @@ public class Shell {
             System.out.println("Did not change resolution due to incorrect format.");
             return;
         }
-        asciiArtAlgorithm = new AsciiArtAlgorithm(image, resolution,
+        asciiArtAlgorithm = new AsciiArtAlgorithm(
+                brightnessPyramid.getBrightnessGrid(resolution),
                 subImgCharMatcher);
         System.out.printf("Resolution set to %d.\n", resolution);
     }
@@ -134,8 +217,30 @@ public class Shell {
         return Math.max(image.getWidth() / image.getHeight(), 1);
     }
 
+    /**
+     * Usage: Shell image [glyphCacheFile]. With a glyph cache file, the
+     * glyphs it holds are not rendered again, and the glyphs of the session
+     * are saved to it on exit.
+     */
     public static void main(String[] args) {
+        Path glyphCacheFile = (args.length > GLYPH_CACHE_INDEX)
+                ? Paths.get(args[GLYPH_CACHE_INDEX]) : null;
+        // loaded before the matcher renders the default charset.
+        if (glyphCacheFile != null && Files.exists(glyphCacheFile)) {
+            try {
+                GlyphCache.load(glyphCacheFile);
+            } catch (IOException e) {
+                System.out.println("Did not load the glyph cache.");
+            }
+        }
         Shell shell = new Shell();
         shell.run(args[IMAGE_PATH_INDEX]);
+        if (glyphCacheFile != null) {
+            try {
+                GlyphCache.save(glyphCacheFile);
+            } catch (IOException e) {
+                System.out.println("Did not save the glyph cache.");
+            }
+        }
     }
 }
@@ -0,0 +1,104 @@
+package ascii_output;
+
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+/**
+ * Plays a sequence of char grids as an animation on an ANSI terminal, laid
+ * out like {@link ConsoleAsciiOutput}. The first frame is drawn in full; each
+ * following frame only moves the cursor to the runs of chars that changed and
+ * rewrites them. An instance reuses its buffer and is not thread-safe.
+ */
+public class AnsiAnimationOutput implements AsciiOutput {
+    private static final String ESCAPE = "\u001b[";
+    private static final String CLEAR_SCREEN = ESCAPE + "2J";
+    private static final String CURSOR_HOME = ESCAPE + "H";
+    private static final char SEPARATOR = ' ';
+    // each char is followed by a separator, so it takes two columns.
+    private static final int COLUMNS_PER_CHAR = 2;
+
+    private final Writer writer;
+    private final StringBuilder frameBuffer = new StringBuilder();
+
+    /**
+     * Outputs to System.out.
+     */
+    public AnsiAnimationOutput() {
+        this(System.out, Charset.defaultCharset());
+    }
+
+    /**
+     * Outputs to the given stream in the given charset. The stream is flushed
+     * but never closed.
+     */
+    public AnsiAnimationOutput(OutputStream outputStream, Charset charset) {
+        this.writer = new OutputStreamWriter(outputStream, charset);
+    }
+
+    /**
+     * Clears the screen and draws the whole frame.
+     */
+    @Override
+    public void out(char[][] chars) {
+        frameBuffer.setLength(0);
+        frameBuffer.append(CLEAR_SCREEN).append(CURSOR_HOME);
+        for (char[] row : chars) {
+            for (char c : row) {
+                frameBuffer.append(c).append(SEPARATOR);
+            }
+            frameBuffer.append('\n');
+        }
+        write();
+    }
+
+    /**
+     * Redraws only the changed chars of a frame over the previous one.
+     *
+     * @param chars        the frame
+     * @param changedTiles which chars changed since the previous frame
+     */
+    public void outChanges(char[][] chars, boolean[][] changedTiles) {
+        frameBuffer.setLength(0);
+        for (int y = 0; y < chars.length; y++) {
+            int x = 0;
+            while (x < chars[y].length) {
+                if (!changedTiles[y][x]) {
+                    x++;
+                    continue;
+                }
+                // one cursor move for a whole run of changed chars.
+                moveCursor(y, x);
+                while (x < chars[y].length && changedTiles[y][x]) {
+                    frameBuffer.append(chars[y][x]).append(SEPARATOR);
+                    x++;
+                }
+            }
+        }
+        moveCursor(chars.length, 0);
+        write();
+    }
+
+    // ANSI cursor positions are 1-based (row;column).
+    private void moveCursor(int y, int x) {
+        frameBuffer.append(ESCAPE).append(y + 1).append(';')
+                .append(x * COLUMNS_PER_CHAR + 1).append('H');
+    }
+
+    private void write() {
+        PipelineMetrics.startStage(Stage.OUTPUT);
+        try {
+            writer.append(frameBuffer);
+            writer.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write the animation frame");
+        }
+        PipelineMetrics.endStage(Stage.OUTPUT);
+    }
+}
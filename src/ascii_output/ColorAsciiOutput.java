@@ -0,0 +1,13 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a 2D array of chars
+ * together with the colour of each char.
+ */
+public interface ColorAsciiOutput {
+    /**
+     * Output the specified 2D array of chars, each in the colour of the same
+     * position of colors quantized to the given palette.
+     */
+    void out(char[][] chars, int[][] colors, ColorPalette palette);
+}
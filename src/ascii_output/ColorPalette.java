@@ -0,0 +1,84 @@
+package ascii_output;
+
+/**
+ * The palettes colours are quantized to before they are output. A coarser
+ * palette gives longer runs of identical colour, and so shorter output.
+ */
+public enum ColorPalette {
+    /** Every 24 bit colour is kept as is. */
+    TRUECOLOR,
+    /** The 6x6x6 colour cube and the 24 greys of 256-colour terminals. */
+    ANSI_256;
+
+    private static final int CUBE_START = 16;
+    private static final int CUBE_SIDE = 6;
+    private static final int GREY_START = 232;
+    private static final int GREY_COUNT = 24;
+    private static final int GREY_FIRST_LEVEL = 8;
+    private static final int GREY_STEP = 10;
+    // the channel value of each step of the colour cube.
+    private static final int[] CUBE_LEVELS = {0, 95, 135, 175, 215, 255};
+
+    /**
+     * Returns the colour of this palette that is closest to the given one.
+     *
+     * @param rgb a packed RGB colour; the alpha byte is ignored
+     * @return the quantized colour, as packed RGB without alpha
+     */
+    public int quantize(int rgb) {
+        if (this == TRUECOLOR) {
+            return rgb & 0xFFFFFF;
+        }
+        return ansi256ToRGB(toAnsi256(rgb));
+    }
+
+    /*
+     * Returns the index of the 256-colour palette entry closest to the given
+     * colour, choosing between the nearest cube colour and the nearest grey.
+     */
+    static int toAnsi256(int rgb) {
+        int red = (rgb >> 16) & 0xFF;
+        int green = (rgb >> 8) & 0xFF;
+        int blue = rgb & 0xFF;
+        int cubeIndex = CUBE_START + CUBE_SIDE * CUBE_SIDE * nearestCubeStep(red)
+                + CUBE_SIDE * nearestCubeStep(green) + nearestCubeStep(blue);
+
+        int average = (red + green + blue) / 3;
+        int greyStep = Math.max(0, Math.min(GREY_COUNT - 1,
+                (average - GREY_FIRST_LEVEL + GREY_STEP / 2) / GREY_STEP));
+        int greyIndex = GREY_START + greyStep;
+
+        return (distance(rgb, ansi256ToRGB(greyIndex))
+                < distance(rgb, ansi256ToRGB(cubeIndex))) ? greyIndex : cubeIndex;
+    }
+
+    // the RGB value of an entry of the cube or the grey ramp.
+    private static int ansi256ToRGB(int index) {
+        if (index >= GREY_START) {
+            int level = GREY_FIRST_LEVEL + (index - GREY_START) * GREY_STEP;
+            return level << 16 | level << 8 | level;
+        }
+        int cube = index - CUBE_START;
+        return CUBE_LEVELS[cube / (CUBE_SIDE * CUBE_SIDE)] << 16
+                | CUBE_LEVELS[cube / CUBE_SIDE % CUBE_SIDE] << 8
+                | CUBE_LEVELS[cube % CUBE_SIDE];
+    }
+
+    private static int nearestCubeStep(int value) {
+        int step = 0;
+        for (int k = 1; k < CUBE_LEVELS.length; k++) {
+            if (Math.abs(CUBE_LEVELS[k] - value) < Math.abs(CUBE_LEVELS[step] - value)) {
+                step = k;
+            }
+        }
+        return step;
+    }
+
+    // squared euclidean distance between two colours.
+    private static int distance(int rgb1, int rgb2) {
+        int red = ((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF);
+        int green = ((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF);
+        int blue = (rgb1 & 0xFF) - (rgb2 & 0xFF);
+        return red * red + green * green + blue * blue;
+    }
+}
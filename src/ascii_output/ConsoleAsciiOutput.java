@@ -1,16 +1,158 @@
 package ascii_output;
 
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
 /**
  * Output a 2D array of chars to the console.
+ * Each row is laid out in a reusable char buffer and written in bulk, so the
+ * same layout can also be sent to any Writer, OutputStream or FileChannel.
+ * Once the buffer has grown, outputting a flat grid allocates nothing.
+ * An instance reuses its buffer and is not thread-safe.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */
+public class ConsoleAsciiOutput implements AsciiOutput, FlatAsciiOutput,
+        ColorAsciiOutput {
+    private static final char SEPARATOR = ' ';
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String ESCAPE = "\u001B[";
+    private static final String ANSI_256_FOREGROUND = ESCAPE + "38;5;";
+    private static final String TRUECOLOR_FOREGROUND = ESCAPE + "38;2;";
+    private static final String RESET = ESCAPE + "0m";
+
+    private final Writer writer;
+    // holds one laid out row, grown to the widest row seen.
+    private char[] rowBuffer = new char[0];
+    // holds one coloured row, with its escape sequences.
+    private final StringBuilder colorRowBuffer = new StringBuilder();
+
+    /**
+     * Outputs to System.out.
+     */
+    public ConsoleAsciiOutput() {
+        this(System.out, Charset.defaultCharset());
+    }
+
+    /**
+     * Outputs to the given writer, which is flushed but never closed.
+     */
+    public ConsoleAsciiOutput(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Outputs to the given stream in the given charset. The stream is flushed
+     * but never closed.
+     */
+    public ConsoleAsciiOutput(OutputStream outputStream, Charset charset) {
+        this(new OutputStreamWriter(outputStream, charset));
+    }
+
+    /**
+     * Outputs UTF-8 text to the given channel, which is never closed.
+     */
+    public ConsoleAsciiOutput(FileChannel channel) {
+        this(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+
     @Override
     public void out(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+        PipelineMetrics.startStage(Stage.OUTPUT);
+        try {
+            for (int y = 0; y < chars.length ; y++) {
+                writeRow(chars[y], 0, chars[y].length);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write the ASCII art");
+        }
+        PipelineMetrics.endStage(Stage.OUTPUT);
+    }
+
+    @Override
+    public void out(char[] chars, int offset, int rows, int columns, int stride) {
+        PipelineMetrics.startStage(Stage.OUTPUT);
+        try {
+            for (int y = 0; y < rows; y++) {
+                writeRow(chars, offset + y * stride, columns);
             }
-            System.out.println();
+            writer.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write the ASCII art");
+        }
+        PipelineMetrics.endStage(Stage.OUTPUT);
+    }
+
+    /**
+     * Outputs the chars with ANSI foreground colours. A colour escape is
+     * written only where the quantized colour changes within a row, and the
+     * colour is reset at the end of every row.
+     */
+    @Override
+    public void out(char[][] chars, int[][] colors, ColorPalette palette) {
+        PipelineMetrics.startStage(Stage.OUTPUT);
+        try {
+            for (int y = 0; y < chars.length ; y++) {
+                writeColorRow(chars[y], colors[y], palette);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write the ASCII art");
+        }
+        PipelineMetrics.endStage(Stage.OUTPUT);
+    }
+
+    // lays out a row like writeRow, with an escape before each colour run.
+    private void writeColorRow(char[] row, int[] colors, ColorPalette palette)
+            throws IOException {
+        colorRowBuffer.setLength(0);
+        int previousColor = -1;
+        for (int x = 0; x < row.length; x++) {
+            int color = palette.quantize(colors[x]);
+            if (color != previousColor) {
+                appendColor(color, palette);
+                previousColor = color;
+            }
+            colorRowBuffer.append(row[x]).append(SEPARATOR);
+        }
+        colorRowBuffer.append(RESET).append(LINE_SEPARATOR);
+        writer.append(colorRowBuffer);
+    }
+
+    private void appendColor(int rgb, ColorPalette palette) {
+        if (palette == ColorPalette.ANSI_256) {
+            colorRowBuffer.append(ANSI_256_FOREGROUND)
+                    .append(ColorPalette.toAnsi256(rgb)).append('m');
+            return;
+        }
+        colorRowBuffer.append(TRUECOLOR_FOREGROUND)
+                .append((rgb >> 16) & 0xFF).append(';')
+                .append((rgb >> 8) & 0xFF).append(';')
+                .append(rgb & 0xFF).append('m');
+    }
+
+    // lays out a row as "c c c \n" and writes it with a single call.
+    private void writeRow(char[] row, int offset, int length) throws IOException {
+        int rowLength = length * 2 + LINE_SEPARATOR.length();
+        if (rowBuffer.length < rowLength) {
+            rowBuffer = new char[rowLength];
+        }
+        int position = 0;
+        for (int x = offset; x < offset + length; x++) {
+            rowBuffer[position++] = row[x];
+            rowBuffer[position++] = SEPARATOR;
         }
+        LINE_SEPARATOR.getChars(0, LINE_SEPARATOR.length(), rowBuffer, position);
+        writer.write(rowBuffer, 0, rowLength);
     }
 }
@@ -0,0 +1,150 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsoleAsciiOutputTest {
+
+    private static final char[][] SMALL_GRID = {
+            "ab".toCharArray(),
+            "\u00e9\u4e2d".toCharArray(),
+    };
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    // two reds that only the 256-colour palette merges, then a run of green.
+    private static final char[][] COLOR_CHARS = {
+            "ab<cd".toCharArray(),
+            "ee".toCharArray(),
+    };
+    private static final int[][] COLORS = {
+            {0xFF0000, 0xFE0101, 0x00FF00, 0x00FF00, 0x123456},
+            {0xFF0000, 0xFF0000},
+    };
+    private static final char[][] GRID = {
+            "a1@".toCharArray(),
+            " #\u00e9".toCharArray(),
+            "\u4e2d .".toCharArray(),
+    };
+
+    @Test
+    void testWriterMatchesPerCharOutput() {
+        StringWriter writer = new StringWriter();
+        ConsoleAsciiOutput output = new ConsoleAsciiOutput(writer);
+        // the row buffer grows from the small grid to the wider one.
+        output.out(SMALL_GRID);
+        output.out(GRID);
+
+        assertEquals(new String(perCharOutput(StandardCharsets.UTF_8,
+                SMALL_GRID, GRID), StandardCharsets.UTF_8), writer.toString());
+    }
+
+    @Test
+    void testStreamMatchesPerCharOutput() {
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8,
+                StandardCharsets.UTF_16BE}) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            new ConsoleAsciiOutput(stream, charset).out(GRID);
+            assertArrayEquals(perCharOutput(charset, GRID), stream.toByteArray(),
+                    charset.name());
+        }
+    }
+
+    @Test
+    void testChannelMatchesPerCharOutput(@TempDir Path directory)
+            throws IOException {
+        Path file = directory.resolve("art.txt");
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ConsoleAsciiOutput output = new ConsoleAsciiOutput(channel);
+            output.out(SMALL_GRID);
+            output.out(GRID);
+            assertTrue(channel.isOpen());
+        }
+        assertArrayEquals(perCharOutput(StandardCharsets.UTF_8, SMALL_GRID, GRID),
+                Files.readAllBytes(file));
+    }
+
+    @Test
+    void testSystemOutMatchesPerCharOutput() {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, Charset.defaultCharset()));
+        try {
+            new ConsoleAsciiOutput().out(GRID);
+        } finally {
+            System.setOut(stdout);
+        }
+        assertArrayEquals(perCharOutput(Charset.defaultCharset(), GRID),
+                printed.toByteArray());
+    }
+
+    @Test
+    void testFlatGridMatchesRows() {
+        int stride = GRID[0].length + 2;
+        char[] flat = new char[1 + GRID.length * stride];
+        for (int y = 0; y < GRID.length; y++) {
+            System.arraycopy(GRID[y], 0, flat, 1 + y * stride, GRID[y].length);
+        }
+        StringWriter writer = new StringWriter();
+        new ConsoleAsciiOutput(writer).out(flat, 1, GRID.length, GRID[0].length,
+                stride);
+
+        StringWriter rows = new StringWriter();
+        new ConsoleAsciiOutput(rows).out(GRID);
+        assertEquals(rows.toString(), writer.toString());
+    }
+
+    @Test
+    void testTruecolorRunsAreMerged() {
+        StringWriter writer = new StringWriter();
+        new ConsoleAsciiOutput(writer).out(COLOR_CHARS, COLORS,
+                ColorPalette.TRUECOLOR);
+
+        // every row starts with its colour and ends with a reset.
+        assertEquals("\u001B[38;2;255;0;0ma \u001B[38;2;254;1;1mb "
+                        + "\u001B[38;2;0;255;0m< c \u001B[38;2;18;52;86md "
+                        + "\u001B[0m" + LINE_SEPARATOR
+                        + "\u001B[38;2;255;0;0me e \u001B[0m" + LINE_SEPARATOR,
+                writer.toString());
+    }
+
+    @Test
+    void testAnsi256RunsAreMerged() {
+        StringWriter writer = new StringWriter();
+        new ConsoleAsciiOutput(writer).out(COLOR_CHARS, COLORS,
+                ColorPalette.ANSI_256);
+
+        // both reds are entry 196 of the cube, and #123456 is entry 23.
+        assertEquals("\u001B[38;5;196ma b \u001B[38;5;46m< c \u001B[38;5;23md "
+                        + "\u001B[0m" + LINE_SEPARATOR
+                        + "\u001B[38;5;196me e \u001B[0m" + LINE_SEPARATOR,
+                writer.toString());
+    }
+
+    // the bytes the original output printed, one char at a time.
+    private static byte[] perCharOutput(Charset charset, char[][]... grids) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, charset);
+        for (char[][] chars : grids) {
+            for (int y = 0; y < chars.length; y++) {
+                for (int x = 0; x < chars[y].length; x++) {
+                    out.print(chars[y][x] + " ");
+                }
+                out.println();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
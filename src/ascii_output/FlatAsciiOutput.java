@@ -0,0 +1,14 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a grid of chars laid out
+ * in a single flat array, as filled by
+ * {@link ascii_art.AsciiArtAlgorithm#run(char[], int, int)}.
+ */
+public interface FlatAsciiOutput {
+    /**
+     * Output the rows x columns grid of chars whose row i starts at
+     * chars[offset + i * stride].
+     */
+    void out(char[] chars, int offset, int rows, int columns, int stride);
+}
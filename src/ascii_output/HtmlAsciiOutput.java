@@ -1,63 +1,458 @@
 package ascii_output;
 
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Rows are escaped into a reusable char buffer and written in bulk. Besides a
+ * file name, the page can be written to any Writer, OutputStream or
+ * FileChannel. An instance reuses its buffer and is not thread-safe.
+ * <p>
+ * In colour, every distinct colour of the page gets a short CSS class, and
+ * each run of same-coloured chars in a row is a single span of that class.
+ * <p>
+ * A page may also be gzip-compressed as it is written, for files and
+ * streams served with Content-Encoding: gzip. A compact page holds its rows
+ * as strings of a small inline script, with every run of a repeated char
+ * written once with its length, and the browser expands them into the same
+ * text; compact pages need JavaScript, and colour pages are never compact.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
+public class HtmlAsciiOutput implements AsciiOutput, FlatAsciiOutput,
+        ColorAsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
+    // the longest escape sequence, "&amp;".
+    private static final int MAX_ESCAPE_LENGTH = 5;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String CLASS_PREFIX = "c";
+    private static final String SPAN_END = "</span>";
+    // runs of at least this many chars are written as "~" char length ";".
+    private static final int MIN_RUN_LENGTH = 4;
+    private static final char RUN_MARK = '~';
+    private static final char RUN_END = ';';
+    // line terminators to JavaScript, but not to Java.
+    private static final char LINE_SEPARATOR_CHAR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR_CHAR = 0x2029;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final String COMPACT_ROWS_START = "<script>\nvar rows=[\n";
+    // expands the runs of every row and fills the paragraph with the rows,
+    // after the line break that starts the paragraph of a plain page.
+    private static final String COMPACT_ROWS_END = "];\n"
+            + "document.getElementsByTagName(\"p\")[0].textContent="
+            + "\"\\n\"+rows.map("
+            + "function(row){return row.replace(/~([\\s\\S])([0-9a-z]+);/g,"
+            + "function(run,c,n){return c.repeat(parseInt(n,36));})+\"\\n\";})"
+            + ".join(\"\");\n"
+            + "</script>\n";
 
     private final String fontName;
+    // exactly one of filename, writer and outputStream is set.
     private final String filename;
+    private final Writer writer;
+    // only set for gzip output to a stream.
+    private final OutputStream outputStream;
+    private final boolean compact;
+    private final boolean gzip;
+    // holds one escaped row, grown to the widest row seen.
+    private char[] rowBuffer = new char[0];
+    // the CSS class number of each colour of the current colour page.
+    private final Map<Integer, Integer> colorClasses = new HashMap<>();
+    private final StringBuilder colorRowBuffer = new StringBuilder();
+    // holds one row of a compact page, as a quoted script string.
+    private final StringBuilder compactRowBuffer = new StringBuilder();
 
     public HtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, false, false);
+    }
+
+    /**
+     * Outputs to the given file, compact and gzip-compressed if asked to. A
+     * compressed file is written in UTF-8.
+     *
+     * @param filename the file to write, which should end with .gz when gzip
+     * @param fontName the font of the page
+     * @param compact  whether to write the rows as run-length coded strings
+     * @param gzip     whether to compress the page
+     */
+    public HtmlAsciiOutput(String filename, String fontName, boolean compact,
+                           boolean gzip) {
         this.fontName = fontName;
         this.filename = filename;
+        this.writer = null;
+        this.outputStream = null;
+        this.compact = compact;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Outputs to the given writer, which is flushed but never closed.
+     */
+    public HtmlAsciiOutput(Writer writer, String fontName) {
+        this(writer, fontName, false);
+    }
+
+    /**
+     * Outputs to the given writer, compact if asked to. The writer is
+     * flushed but never closed.
+     */
+    public HtmlAsciiOutput(Writer writer, String fontName, boolean compact) {
+        this.fontName = fontName;
+        this.filename = null;
+        this.writer = writer;
+        this.outputStream = null;
+        this.compact = compact;
+        this.gzip = false;
+    }
+
+    /**
+     * Outputs UTF-8 to the given stream, which is flushed but never closed.
+     */
+    public HtmlAsciiOutput(OutputStream outputStream, String fontName) {
+        this(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8),
+                fontName);
+    }
+
+    /**
+     * Outputs UTF-8 to the given stream, compact and gzip-compressed if asked
+     * to. Every page is a complete gzip member; the stream is flushed but
+     * never closed.
+     */
+    public HtmlAsciiOutput(OutputStream outputStream, String fontName,
+                           boolean compact, boolean gzip) {
+        this.fontName = fontName;
+        this.filename = null;
+        this.writer = gzip ? null
+                : new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        this.outputStream = gzip ? outputStream : null;
+        this.compact = compact;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Outputs UTF-8 to the given channel, which is never closed.
+     */
+    public HtmlAsciiOutput(FileChannel channel, String fontName) {
+        this(Channels.newWriter(channel, StandardCharsets.UTF_8), fontName);
     }
 
     @Override
     public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                "<!DOCTYPE html>\n"+
-                "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
+        PipelineMetrics.startStage(Stage.OUTPUT);
+        try {
+            writeTo(page -> {
+                if (compact) {
+                    writeCompactPage(page, chars);
+                } else {
+                    writePage(page, chars);
                 }
-                writer.newLine();
+            });
+        } finally {
+            PipelineMetrics.endStage(Stage.OUTPUT);
+        }
+    }
+
+    @Override
+    public void out(char[] chars, int offset, int rows, int columns, int stride) {
+        PipelineMetrics.startStage(Stage.OUTPUT);
+        try {
+            writeTo(page -> {
+                if (compact) {
+                    writeCompactFlatPage(page, chars, offset, rows, columns,
+                            stride);
+                } else {
+                    writeFlatPage(page, chars, offset, rows, columns, stride);
+                }
+            });
+        } finally {
+            PipelineMetrics.endStage(Stage.OUTPUT);
+        }
+    }
+
+    /**
+     * Outputs the chars in colour, with one span per run of same-coloured
+     * chars in a row.
+     */
+    @Override
+    public void out(char[][] chars, int[][] colors, ColorPalette palette) {
+        PipelineMetrics.startStage(Stage.OUTPUT);
+        try {
+            writeTo(page -> writeColorPage(page, chars, colors, palette));
+        } finally {
+            PipelineMetrics.endStage(Stage.OUTPUT);
+        }
+    }
+
+    // writes a page to the writer or the stream, or to the file if neither.
+    private void writeTo(PageWriter pageWriter) {
+        if (writer != null || outputStream != null) {
+            try {
+                if (writer != null) {
+                    pageWriter.write(writer);
+                    writer.flush();
+                } else {
+                    writeGzip(pageWriter, outputStream);
+                    outputStream.flush();
+                }
+            } catch (IOException e) {
+                Logger.getGlobal().severe("Failed to write the HTML page");
             }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
+            return;
+        }
+        if (gzip) {
+            try (OutputStream fileStream = new FileOutputStream(filename)) {
+                writeGzip(pageWriter, fileStream);
+            } catch (IOException e) {
+                Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            }
+            return;
+        }
+        try(BufferedWriter fileWriter = new BufferedWriter(new FileWriter(filename))) {
+            pageWriter.write(fileWriter);
         } catch(IOException e) {
             Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
         }
     }
+
+    // compresses a page into the stream, which is left open.
+    private static void writeGzip(PageWriter pageWriter, OutputStream stream)
+            throws IOException {
+        GZIPOutputStream gzipStream = new GZIPOutputStream(stream, GZIP_BUFFER_SIZE);
+        Writer gzipWriter = new OutputStreamWriter(gzipStream, StandardCharsets.UTF_8);
+        pageWriter.write(gzipWriter);
+        gzipWriter.flush();
+        gzipStream.finish();
+    }
+
+    private void writePage(Writer writer, char[][] chars) throws IOException {
+        writeHeader(writer, chars[0].length, "");
+        for(int y = 0 ; y < chars.length ; y++) {
+            writeRow(writer, chars[y], 0, chars[y].length);
+        }
+        writeFooter(writer);
+    }
+
+    private void writeFlatPage(Writer writer, char[] chars, int offset,
+                               int rows, int columns, int stride)
+            throws IOException {
+        writeHeader(writer, columns, "");
+        for (int y = 0; y < rows; y++) {
+            writeRow(writer, chars, offset + y * stride, columns);
+        }
+        writeFooter(writer);
+    }
+
+    private void writeColorPage(Writer writer, char[][] chars, int[][] colors,
+                                ColorPalette palette) throws IOException {
+        // a first pass numbers the colours, for the style sheet in the header.
+        colorClasses.clear();
+        StringBuilder styleSheet = new StringBuilder("<style>\n");
+        for (int y = 0; y < chars.length; y++) {
+            for (int x = 0; x < chars[y].length; x++) {
+                int color = palette.quantize(colors[y][x]);
+                if (!colorClasses.containsKey(color)) {
+                    int colorClass = colorClasses.size();
+                    colorClasses.put(color, colorClass);
+                    styleSheet.append('.').append(CLASS_PREFIX)
+                            .append(Integer.toString(colorClass, Character.MAX_RADIX))
+                            .append(String.format("{color:#%06x}", color))
+                            .append('\n');
+                }
+            }
+        }
+        styleSheet.append("</style>\n");
+
+        writeHeader(writer, chars[0].length, styleSheet.toString());
+        for (int y = 0; y < chars.length; y++) {
+            writeColorRow(writer, chars[y], colors[y], palette);
+        }
+        writeFooter(writer);
+    }
+
+    // writes the rows as strings of a script that expands them into the page.
+    private void writeCompactPage(Writer writer, char[][] chars)
+            throws IOException {
+        writeCompactHeader(writer, chars[0].length);
+        for (int y = 0; y < chars.length; y++) {
+            writeCompactRow(writer, chars[y], 0, chars[y].length);
+        }
+        writeCompactFooter(writer);
+    }
+
+    private void writeCompactFlatPage(Writer writer, char[] chars, int offset,
+                                      int rows, int columns, int stride)
+            throws IOException {
+        writeCompactHeader(writer, columns);
+        for (int y = 0; y < rows; y++) {
+            writeCompactRow(writer, chars, offset + y * stride, columns);
+        }
+        writeCompactFooter(writer);
+    }
+
+    // an empty paragraph, then the start of the script.
+    private void writeCompactHeader(Writer writer, int columns)
+            throws IOException {
+        writeHeader(writer, columns, "");
+        writer.write("</p>\n");
+        writer.write(COMPACT_ROWS_START);
+    }
+
+    private static void writeCompactFooter(Writer writer) throws IOException {
+        writer.write(COMPACT_ROWS_END);
+        writer.write(
+            "</body>\n"+
+            "</html>\n");
+    }
+
+    /*
+     * Writes a row as a quoted script string followed by a comma. Runs of
+     * MIN_RUN_LENGTH or more chars, and every RUN_MARK, are written as
+     * RUN_MARK, the char, the length in base 36 and RUN_END.
+     */
+    private void writeCompactRow(Writer writer, char[] row, int offset,
+                                 int length) throws IOException {
+        compactRowBuffer.setLength(0);
+        compactRowBuffer.append('"');
+        int end = offset + length;
+        int x = offset;
+        while (x < end) {
+            char c = row[x];
+            int runEnd = x + 1;
+            while (runEnd < end && row[runEnd] == c) {
+                runEnd++;
+            }
+            int runLength = runEnd - x;
+            if (runLength >= MIN_RUN_LENGTH || c == RUN_MARK) {
+                compactRowBuffer.append(RUN_MARK);
+                appendScriptChar(c);
+                compactRowBuffer.append(Integer.toString(runLength, Character.MAX_RADIX))
+                        .append(RUN_END);
+            } else {
+                for (int k = 0; k < runLength; k++) {
+                    appendScriptChar(c);
+                }
+            }
+            x = runEnd;
+        }
+        compactRowBuffer.append("\",\n");
+        writer.append(compactRowBuffer);
+    }
+
+    // escapes a char for a quoted string inside a script element.
+    private void appendScriptChar(char c) {
+        if (c == '"' || c == '\\') {
+            compactRowBuffer.append('\\').append(c);
+        } else if (c == '<' || c < ' ' || c == LINE_SEPARATOR_CHAR
+                || c == PARAGRAPH_SEPARATOR_CHAR) {
+            // escaping '<' keeps "</script>" out of the strings.
+            compactRowBuffer.append(String.format("\\u%04x", (int) c));
+        } else {
+            compactRowBuffer.append(c);
+        }
+    }
+
+    // the page up to the first row; style is written between body and p.
+    private void writeHeader(Writer writer, int columns, String style)
+            throws IOException {
+        writer.write(
+            "<!DOCTYPE html>\n"+
+            "<html>\n"+
+            "<body style=\""+
+                "\tCOLOR:#000000;"+
+                "\tTEXT-ALIGN:center;"+
+                "\tFONT-SIZE:1px;\">\n");
+        writer.write(style);
+        writer.write(String.format(
+            "<p style=\""+
+                "\twhite-space:pre;"+
+                "\tFONT-FAMILY:%s;"+
+                "\tFONT-SIZE:%frem;"+
+                "\tLETTER-SPACING:0.15em;"+
+                "\tLINE-HEIGHT:%fem;\">\n",
+                fontName, BASE_FONT_SIZE/columns, BASE_LINE_SPACING));
+    }
+
+    private static void writeFooter(Writer writer) throws IOException {
+        writer.write(
+            "</p>\n"+
+            "</body>\n"+
+            "</html>\n");
+    }
+
+    // escapes a row and its line break into the buffer, then writes it at once.
+    private void writeRow(Writer writer, char[] row, int offset, int length)
+            throws IOException {
+        int maxRowLength = length * MAX_ESCAPE_LENGTH + LINE_SEPARATOR.length();
+        if (rowBuffer.length < maxRowLength) {
+            rowBuffer = new char[maxRowLength];
+        }
+        int position = 0;
+        for (int x = offset; x < offset + length; x++) {
+            switch(row[x]) {
+                case '<': position = append(rowBuffer, position, "&lt;");  break;
+                case '>': position = append(rowBuffer, position, "&gt;");  break;
+                case '&': position = append(rowBuffer, position, "&amp;"); break;
+                default:  rowBuffer[position++] = row[x];
+            }
+        }
+        position = append(rowBuffer, position, LINE_SEPARATOR);
+        writer.write(rowBuffer, 0, position);
+    }
+
+    // writes a row with a span of the colour's class around each colour run.
+    private void writeColorRow(Writer writer, char[] row, int[] colors,
+                               ColorPalette palette) throws IOException {
+        colorRowBuffer.setLength(0);
+        int previousColor = -1;
+        for (int x = 0; x < row.length; x++) {
+            int color = palette.quantize(colors[x]);
+            if (color != previousColor) {
+                if (previousColor != -1) {
+                    colorRowBuffer.append(SPAN_END);
+                }
+                colorRowBuffer.append("<span class=").append(CLASS_PREFIX)
+                        .append(Integer.toString(colorClasses.get(color),
+                                Character.MAX_RADIX))
+                        .append('>');
+                previousColor = color;
+            }
+            switch(row[x]) {
+                case '<': colorRowBuffer.append("&lt;");  break;
+                case '>': colorRowBuffer.append("&gt;");  break;
+                case '&': colorRowBuffer.append("&amp;"); break;
+                default:  colorRowBuffer.append(row[x]);
+            }
+        }
+        if (previousColor != -1) {
+            colorRowBuffer.append(SPAN_END);
+        }
+        colorRowBuffer.append(LINE_SEPARATOR);
+        writer.append(colorRowBuffer);
+    }
+
+    // writes a whole page to the given writer.
+    private interface PageWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    private static int append(char[] buffer, int position, String text) {
+        text.getChars(0, text.length(), buffer, position);
+        return position + text.length();
+    }
 }
@@ -0,0 +1,235 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlAsciiOutputTest {
+
+    private static final String FONT = "Courier New";
+    // the expansion of the page's script, with the same regular expression.
+    private static final Pattern RUN = Pattern.compile("~([\\s\\S])([0-9a-z]+);");
+    private static final String ROWS_START = "var rows=[\n";
+    private static final String ROWS_END = "];\n";
+    private static final String LEADING_LINE_BREAK = "textContent=\"\\n\"+rows";
+    private static final String PARAGRAPH_START = "em;\">";
+    private static final String PARAGRAPH_END = "</p>";
+
+    // two reds that only the 256-colour palette merges, then a run of green.
+    private static final char[][] COLOR_CHARS = {
+            "ab<cd".toCharArray(),
+            "ee".toCharArray(),
+    };
+    private static final int[][] COLORS = {
+            {0xFF0000, 0xFE0101, 0x00FF00, 0x00FF00, 0x123456},
+            {0xFF0000, 0xFF0000},
+    };
+    private static final String STYLE_START = "<style>\n";
+    private static final String STYLE_END = "</style>\n";
+    private static final char[][] ROWS = {
+            "~a~~b\"\\<>&x".toCharArray(),
+            "aaabbbbccccc~~~~~".toCharArray(),
+            ("d".repeat(36) + "e".repeat(40) + "<".repeat(4)).toCharArray(),
+            ("\"".repeat(6) + "\\".repeat(3) + "\u2028\u2029\t"
+                    + " ".repeat(100)).toCharArray(),
+    };
+
+    @Test
+    void testCompactRowsDecodeToPlainText() {
+        String plain = writePage(false);
+        String compact = writePage(true);
+
+        String expected = plainText(plain);
+        assertEquals(expected, compactText(compact));
+        // the paragraph starts with a line break, then every row and its own.
+        StringBuilder rows = new StringBuilder("\n");
+        for (char[] row : ROWS) {
+            rows.append(row).append('\n');
+        }
+        assertEquals(rows.toString(), expected);
+    }
+
+    @Test
+    void testCompactRowsCodeRuns() {
+        String compact = writePage(true);
+        String rows = compact.substring(compact.indexOf(ROWS_START),
+                compact.indexOf(ROWS_END));
+
+        // runs of 3 stay, runs of 4 and more, and every '~', are coded.
+        assertTrue(rows.contains("\"aaa~b4;~c5;~~5;\""));
+        assertTrue(rows.contains("~~1;a~~2;b"));
+        // lengths are in base 36.
+        assertTrue(rows.contains("~d10;~e14;~\\u003c4;"));
+        assertTrue(rows.contains("~\\\"6;\\\\\\\\\\\\\\u2028\\u2029\\u0009~ 2s;"));
+        assertFalse(rows.contains("</"));
+    }
+
+    @Test
+    void testCompactFlatPageMatchesRows() {
+        int columns = 0;
+        for (char[] row : ROWS) {
+            columns = Math.max(columns, row.length);
+        }
+        char[][] padded = new char[ROWS.length][columns];
+        char[] flat = new char[3 + ROWS.length * (columns + 2)];
+        for (int y = 0; y < ROWS.length; y++) {
+            for (int x = 0; x < columns; x++) {
+                padded[y][x] = x < ROWS[y].length ? ROWS[y][x] : '.';
+                flat[3 + y * (columns + 2) + x] = padded[y][x];
+            }
+        }
+        StringWriter rowsPage = new StringWriter();
+        new HtmlAsciiOutput(rowsPage, FONT, true).out(padded);
+        StringWriter flatPage = new StringWriter();
+        new HtmlAsciiOutput(flatPage, FONT, true)
+                .out(flat, 3, ROWS.length, columns, columns + 2);
+
+        assertEquals(rowsPage.toString(), flatPage.toString());
+    }
+
+    @Test
+    void testGzipStreamHoldsThePage() throws IOException {
+        for (boolean compact : new boolean[]{false, true}) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            HtmlAsciiOutput output = new HtmlAsciiOutput(stream, FONT, compact, true);
+            output.out(ROWS);
+            // every page is a gzip member of its own.
+            output.out(ROWS);
+
+            String page = writePage(compact);
+            assertEquals(page + page, gunzip(stream.toByteArray()));
+        }
+    }
+
+    @Test
+    void testTruecolorRunsAreSpans() {
+        String page = writeColorPage(COLOR_CHARS, COLORS, ColorPalette.TRUECOLOR);
+
+        // classes are numbered in order of first use.
+        assertEquals(".c0{color:#ff0000}\n.c1{color:#fe0101}\n"
+                + ".c2{color:#00ff00}\n.c3{color:#123456}\n", styleSheet(page));
+        assertEquals("\n<span class=c0>a</span><span class=c1>b</span>"
+                        + "<span class=c2>&lt;c</span><span class=c3>d</span>\n"
+                        + "<span class=c0>ee</span>\n",
+                paragraph(page));
+    }
+
+    @Test
+    void testAnsi256RunsAreSpans() {
+        String page = writeColorPage(COLOR_CHARS, COLORS, ColorPalette.ANSI_256);
+
+        // colours are quantized before they are compared and numbered.
+        assertEquals(".c0{color:#ff0000}\n.c1{color:#00ff00}\n"
+                + ".c2{color:#005f5f}\n", styleSheet(page));
+        assertEquals("\n<span class=c0>ab</span><span class=c1>&lt;c</span>"
+                        + "<span class=c2>d</span>\n<span class=c0>ee</span>\n",
+                paragraph(page));
+    }
+
+    @Test
+    void testColorClassesAreBase36() {
+        char[][] chars = {"x".repeat(37).toCharArray()};
+        int[][] colors = new int[1][37];
+        for (int x = 0; x < colors[0].length; x++) {
+            colors[0][x] = x;
+        }
+        String page = writeColorPage(chars, colors, ColorPalette.TRUECOLOR);
+
+        assertTrue(styleSheet(page).contains("\n.ca{color:#00000a}\n"));
+        assertTrue(styleSheet(page).endsWith("\n.c10{color:#000024}\n"));
+        assertTrue(paragraph(page).endsWith(
+                "<span class=cz>x</span><span class=c10>x</span>\n"));
+    }
+
+    private static String writeColorPage(char[][] chars, int[][] colors,
+                                         ColorPalette palette) {
+        StringWriter page = new StringWriter();
+        new HtmlAsciiOutput(page, FONT).out(chars, colors, palette);
+        return page.toString();
+    }
+
+    private static String styleSheet(String page) {
+        int start = page.indexOf(STYLE_START) + STYLE_START.length();
+        return page.substring(start, page.indexOf(STYLE_END, start));
+    }
+
+    private static String writePage(boolean compact) {
+        StringWriter page = new StringWriter();
+        new HtmlAsciiOutput(page, FONT, compact).out(ROWS);
+        return page.toString();
+    }
+
+    // the text of the paragraph of a plain page, as the browser shows it.
+    private static String plainText(String page) {
+        return paragraph(page).replace("&lt;", "<").replace("&gt;", ">")
+                .replace("&amp;", "&");
+    }
+
+    // the markup of the paragraph of a page, with "\n" line breaks.
+    private static String paragraph(String page) {
+        int start = page.indexOf(PARAGRAPH_START) + PARAGRAPH_START.length();
+        return page.substring(start, page.indexOf(PARAGRAPH_END, start))
+                .replace(System.lineSeparator(), "\n");
+    }
+
+    // the text the script of a compact page puts into its paragraph.
+    private static String compactText(String page) {
+        int start = page.indexOf(ROWS_START) + ROWS_START.length();
+        String[] lines = page.substring(start, page.indexOf(ROWS_END, start))
+                .split("\n");
+        // the script may put a line break before the rows.
+        String script = page.substring(page.indexOf(ROWS_END, start));
+        StringBuilder text = new StringBuilder(
+                script.contains(LEADING_LINE_BREAK) ? "\n" : "");
+        for (String line : lines) {
+            assertTrue(line.startsWith("\"") && line.endsWith("\","), line);
+            String row = unquote(line.substring(1, line.length() - 2));
+            Matcher run = RUN.matcher(row);
+            StringBuilder expanded = new StringBuilder();
+            while (run.find()) {
+                String repeated = run.group(1).repeat(
+                        Integer.parseInt(run.group(2), 36));
+                run.appendReplacement(expanded, Matcher.quoteReplacement(repeated));
+            }
+            run.appendTail(expanded);
+            text.append(expanded).append('\n');
+        }
+        return text.toString();
+    }
+
+    // the value of the body of a script string, with \", \\ and \\uXXXX escapes.
+    private static String unquote(String quoted) {
+        StringBuilder value = new StringBuilder();
+        for (int k = 0; k < quoted.length(); k++) {
+            char c = quoted.charAt(k);
+            assertNotEquals('"', c, "unescaped quote in " + quoted);
+            if (c != '\\') {
+                value.append(c);
+            } else if (quoted.charAt(k + 1) == 'u') {
+                value.append((char) Integer.parseInt(
+                        quoted.substring(k + 2, k + 6), 16));
+                k += 5;
+            } else {
+                value.append(quoted.charAt(k + 1));
+                k++;
+            }
+        }
+        return value.toString();
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream stream =
+                     new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package image;
+
+/*
+ * Accumulates the brightness grid of a padded image from the rows of the
+ * unpadded source image, fed one row at a time and in any order. The padding
+ * and the tiles are laid out exactly as ImageManager.imagePadding and
+ * ImageManager.getBrightnessGrid would, and the per-tile sums are exact
+ * longs like there, so the resulting grid is identical - without ever
+ * holding more than a row of the image.
+ */
+class BrightnessGridAccumulator {
+
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int verticalPadding;
+    private final int horizontalPadding;
+    private final int subImageSize;
+    private final int subImagesInCol;
+    private final int resolution;
+    // greyscale sum of the source pixels of each tile.
+    private final long[][] tileSums;
+
+    BrightnessGridAccumulator(int sourceWidth, int sourceHeight, int resolution) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.verticalPadding = ImageManager.getPadding(sourceHeight);
+        this.horizontalPadding = ImageManager.getPadding(sourceWidth);
+        int paddedWidth = sourceWidth + horizontalPadding * 2;
+        int paddedHeight = sourceHeight + verticalPadding * 2;
+        if (resolution < 1 || resolution > paddedWidth
+                || resolution > paddedHeight) {
+            throw new IllegalArgumentException(
+                    "Resolution exceeds image boundaries.");
+        }
+        this.resolution = resolution;
+        this.subImageSize = paddedWidth / resolution;
+        this.subImagesInCol = paddedHeight / subImageSize;
+        this.tileSums = new long[subImagesInCol][resolution];
+    }
+
+    int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    /*
+     * Adds a row of the source image, as packed ARGB pixels.
+     */
+    void addRow(int sourceRow, int[] rgbRow) {
+        int tileRow = (sourceRow + verticalPadding) / subImageSize;
+        if (tileRow >= subImagesInCol) {
+            // rows past the last whole tile are not part of any tile.
+            return;
+        }
+        long[] rowSums = tileSums[tileRow];
+        // each tile sums the source columns it covers, if any.
+        for (int tileCol = 0; tileCol < resolution; tileCol++) {
+            int start = Math.max(tileCol * subImageSize - horizontalPadding, 0);
+            int end = Math.min((tileCol + 1) * subImageSize - horizontalPadding,
+                    sourceWidth);
+            if (start < end) {
+                rowSums[tileCol] += LuminanceKernel.INSTANCE.sumGreyscale(rgbRow,
+                        start, end);
+            }
+        }
+    }
+
+    /*
+     * Adds the padding of every tile and returns the normalized grid.
+     */
+    double[][] getBrightnessGrid() {
+        int padGreyscale = ImageManager.greyscalePixel(ImageManager.WHITE_RGB);
+        long pixelCount = (long) subImageSize * subImageSize;
+        double[][] brightnessGrid = new double[subImagesInCol][resolution];
+        for (int i = 0; i < subImagesInCol; i++) {
+            int sourceRows = overlap(i * subImageSize - verticalPadding,
+                    sourceHeight);
+            for (int j = 0; j < resolution; j++) {
+                int sourceCols = overlap(j * subImageSize - horizontalPadding,
+                        sourceWidth);
+                long padCount = pixelCount - (long) sourceRows * sourceCols;
+                long pixelSumValue = tileSums[i][j] + padCount * padGreyscale;
+                // returning normalized value (0 to 1)
+                brightnessGrid[i][j] =
+                        ((double) pixelSumValue / (pixelCount * 255));
+            }
+        }
+        return brightnessGrid;
+    }
+
+    // length of the intersection of [start, start + subImageSize) and [0, size).
+    private int overlap(int start, int size) {
+        return Math.max(0, Math.min(start + subImageSize, size) - Math.max(start, 0));
+    }
+}
@@ -0,0 +1,47 @@
+package image;
+
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Fills a band of rows of a brightness grid, splitting the band in halves
+ * until it is small enough to be computed directly. Every tile is computed
+ * by the same code as the sequential path, so the grids are identical.
+ */
+class BrightnessGridTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // bands with fewer pixels than this are not worth splitting further.
+    static final int MIN_PIXELS_PER_TASK = 1 << 16;
+
+    private final Image image;
+    private final double[][] brightnessGrid;
+    private final int subImageSize;
+    private final int startRow;
+    private final int endRow;
+
+    BrightnessGridTask(Image image, double[][] brightnessGrid,
+                       int subImageSize, int startRow, int endRow) {
+        this.image = image;
+        this.brightnessGrid = brightnessGrid;
+        this.subImageSize = subImageSize;
+        this.startRow = startRow;
+        this.endRow = endRow;
+    }
+
+    @Override
+    protected void compute() {
+        long bandPixels = (long) (endRow - startRow) * subImageSize
+                * image.getWidth();
+        if (endRow - startRow == 1 || bandPixels <= MIN_PIXELS_PER_TASK) {
+            ImageManager.fillBrightnessRows(image, brightnessGrid,
+                    subImageSize, startRow, endRow);
+            return;
+        }
+        int middleRow = (startRow + endRow) >>> 1;
+        invokeAll(new BrightnessGridTask(image, brightnessGrid, subImageSize,
+                        startRow, middleRow),
+                new BrightnessGridTask(image, brightnessGrid, subImageSize,
+                        middleRow, endRow));
+    }
+}
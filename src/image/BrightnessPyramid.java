@@ -0,0 +1,153 @@
+package image;
+
+import metrics.Counter;
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
+/**
+ * A pyramid of tile greyscale sums, built once per image: level 0 holds the
+ * greyscale value of every pixel, and every following level sums 2x2 cells of
+ * the level below. Resolutions reached by doubling and halving map onto whole
+ * levels, so the brightness grid of any of them is computed in O(tiles), with
+ * no pixel access.
+ * <p>
+ * Cells of up to 2^11 x 2^11 pixels are kept as ints; the larger ones, whose
+ * sums may exceed an int, and every tile sum are longs. The sums are exact,
+ * so the grids are identical to those of
+ * {@link ImageManager#getBrightnessGrid(Image, int)}.
+ */
+public class BrightnessPyramid {
+
+    // the first level whose cells (4^k * 255 at most) may not fit in an int.
+    private static final int FIRST_LONG_LEVEL = 12;
+
+    private final int width;
+    private final int height;
+    // levels[k] holds the sums of the 2^k x 2^k tiles, row-major, for the
+    // levels below FIRST_LONG_LEVEL; longLevels holds the others.
+    private final int[][] levels;
+    private final long[][] longLevels;
+
+    /**
+     * Builds the pyramid of the given image in a single pass over its pixels.
+     *
+     * @param image the (padded) image
+     */
+    public BrightnessPyramid(Image image) {
+        PipelineMetrics.startStage(Stage.BRIGHTNESS_GRID);
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        int levelCount = 32 - Integer.numberOfLeadingZeros(Math.min(width, height));
+        this.levels = new int[Math.min(levelCount, FIRST_LONG_LEVEL)][];
+        this.longLevels = new long[Math.max(levelCount - FIRST_LONG_LEVEL, 0)][];
+
+        int[] rgbRow = new int[width];
+        int[] finest = new int[width * height];
+        for (int i = 0; i < height; i++) {
+            image.getRGBRow(i, 0, width, rgbRow, 0);
+            for (int j = 0; j < width; j++) {
+                finest[i * width + j] = ImageManager.greyscalePixel(rgbRow[j]);
+            }
+        }
+        levels[0] = finest;
+
+        for (int k = 1; k < levels.length; k++) {
+            int[] below = levels[k - 1];
+            int belowWidth = width >> (k - 1);
+            int levelWidth = width >> k;
+            int levelHeight = height >> k;
+            int[] level = new int[levelWidth * levelHeight];
+            for (int i = 0; i < levelHeight; i++) {
+                int top = (2 * i) * belowWidth;
+                int bottom = top + belowWidth;
+                for (int j = 0; j < levelWidth; j++) {
+                    level[i * levelWidth + j] = below[top + 2 * j]
+                            + below[top + 2 * j + 1]
+                            + below[bottom + 2 * j]
+                            + below[bottom + 2 * j + 1];
+                }
+            }
+            levels[k] = level;
+        }
+        for (int k = FIRST_LONG_LEVEL; k < levelCount; k++) {
+            int belowWidth = width >> (k - 1);
+            int levelWidth = width >> k;
+            int levelHeight = height >> k;
+            long[] level = new long[levelWidth * levelHeight];
+            for (int i = 0; i < levelHeight; i++) {
+                int top = (2 * i) * belowWidth;
+                int bottom = top + belowWidth;
+                for (int j = 0; j < levelWidth; j++) {
+                    level[i * levelWidth + j] = getCell(k - 1, top + 2 * j)
+                            + getCell(k - 1, top + 2 * j + 1)
+                            + getCell(k - 1, bottom + 2 * j)
+                            + getCell(k - 1, bottom + 2 * j + 1);
+                }
+            }
+            longLevels[k - FIRST_LONG_LEVEL] = level;
+        }
+        PipelineMetrics.endStage(Stage.BRIGHTNESS_GRID);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Calculates the brightness of every sub-image of the given resolution.
+     * When the sub-image size is a power of two this reads one cell of the
+     * matching level per sub-image; otherwise the cells of the largest level
+     * that divides the sub-image size are summed.
+     *
+     * @param resolution the number of sub-images in a row
+     * @return the brightness grid, indexed by sub-image row and column
+     */
+    public double[][] getBrightnessGrid(int resolution) {
+        if (resolution < 1 || resolution > width) {
+            throw new IllegalArgumentException(
+                    "Resolution exceeds image boundaries.");
+        }
+        int subImageSize = width / resolution;
+        int subImagesInCol = height / subImageSize;
+        double[][] brightnessGrid = new double[subImagesInCol][resolution];
+        if (subImagesInCol == 0) {
+            return brightnessGrid;
+        }
+
+        int k = Math.min(Integer.numberOfTrailingZeros(subImageSize),
+                levels.length + longLevels.length - 1);
+        int levelWidth = width >> k;
+        int cellsPerSide = subImageSize >> k;
+        long pixelCount = (long) subImageSize * subImageSize;
+        PipelineMetrics.add(Counter.TILES_PROCESSED,
+                (long) subImagesInCol * resolution);
+        for (int i = 0; i < subImagesInCol; i++) {
+            for (int j = 0; j < resolution; j++) {
+                long pixelSumValue = 0;
+                for (int r = 0; r < cellsPerSide; r++) {
+                    int cellRowStart = (i * cellsPerSide + r) * levelWidth
+                            + j * cellsPerSide;
+                    for (int c = 0; c < cellsPerSide; c++) {
+                        pixelSumValue += getCell(k, cellRowStart + c);
+                    }
+                }
+                // returning normalized value (0 to 1)
+                brightnessGrid[i][j] =
+                        ((double) pixelSumValue / (pixelCount * 255));
+            }
+        }
+        return brightnessGrid;
+    }
+
+    // the sum of the given cell of level k, whichever array holds it.
+    private long getCell(int k, int index) {
+        if (k < FIRST_LONG_LEVEL) {
+            return levels[k][index];
+        }
+        return longLevels[k - FIRST_LONG_LEVEL][index];
+    }
+}
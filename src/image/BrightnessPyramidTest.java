@@ -0,0 +1,66 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BrightnessPyramidTest {
+
+    @Test
+    void testLargeBrightTilesDoNotOverflow() {
+        // a bright 6000x4000 photo, padded with white to 8192x4096: at
+        // resolution 2 a tile is 4096x4096 pixels, whose sum exceeds an int.
+        int[] pixels = new int[6000 * 4000];
+        Arrays.fill(pixels, 0xFFF0E0D0);
+        Image paddedImage = ImageManager.imagePadding(new Image(pixels, 6000, 4000));
+        assertEquals(8192, paddedImage.getWidth());
+        assertEquals(4096, paddedImage.getHeight());
+
+        BrightnessPyramid pyramid = new BrightnessPyramid(paddedImage);
+        for (int resolution : new int[]{2, 3, 4, 8, 16}) {
+            double[][] grid = pyramid.getBrightnessGrid(resolution);
+            int subImageSize = 8192 / resolution;
+            assertEquals(4096 / subImageSize, grid.length);
+            for (int i = 0; i < grid.length; i++) {
+                for (int j = 0; j < resolution; j++) {
+                    assertEquals(referenceBrightness(paddedImage, i * subImageSize,
+                                    j * subImageSize, subImageSize),
+                            grid[i][j], "resolution " + resolution);
+                    assertTrue(grid[i][j] > 0.8 && grid[i][j] <= 1);
+                }
+            }
+        }
+        double[][] direct = ImageManager.getBrightnessGrid(paddedImage, 2);
+        assertArrayEquals(direct[0], pyramid.getBrightnessGrid(2)[0]);
+    }
+
+    @Test
+    void testSmallImageMatchesDirectGrid() {
+        int[] pixels = new int[37 * 23];
+        for (int k = 0; k < pixels.length; k++) {
+            pixels[k] = 0xFF000000 | (k * 40503 & 0xFFFFFF);
+        }
+        Image paddedImage = ImageManager.imagePadding(new Image(pixels, 37, 23));
+        BrightnessPyramid pyramid = new BrightnessPyramid(paddedImage);
+        for (int resolution = 1; resolution <= paddedImage.getWidth(); resolution *= 2) {
+            double[][] expected = ImageManager.getBrightnessGrid(paddedImage, resolution);
+            double[][] grid = pyramid.getBrightnessGrid(resolution);
+            for (int i = 0; i < grid.length; i++) {
+                assertArrayEquals(expected[i], grid[i]);
+            }
+        }
+    }
+
+    // the brightness of a square tile, summed pixel by pixel in a long.
+    private static double referenceBrightness(Image image, int startRowIdx,
+                                              int startColIdx, int size) {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                sum += ImageManager.greyscalePixel(
+                        image.getRGB(startRowIdx + i, startColIdx + j));
+            }
+        }
+        return (double) sum / ((long) size * size * 255);
+    }
+}
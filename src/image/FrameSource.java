@@ -0,0 +1,24 @@
+package image;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sequence of equally sized frames, read one at a time.
+ */
+public interface FrameSource extends Closeable {
+    /**
+     * Reads the next frame. A source may reuse the returned image for the
+     * next frame, so a frame is only valid until the next call.
+     *
+     * @return the next frame, or null when the sequence is over
+     * @throws IOException if the frame cannot be read
+     */
+    Image nextFrame() throws IOException;
+
+    /**
+     * Returns the delay to show the last read frame for, in milliseconds,
+     * or 0 if the source does not specify one.
+     */
+    int getFrameDelayMillis();
+}
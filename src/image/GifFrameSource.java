@@ -0,0 +1,183 @@
+package image;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * The frames of an animated GIF. A GIF frame only holds the part of the
+ * picture that changed, so frames are composited onto a white canvas of the
+ * full logical screen size, honouring each frame's disposal method.
+ * <p>
+ * Every frame is composited into the same pixel plane, which backs the one
+ * Image returned by every call: a frame is valid until the next call.
+ */
+public class GifFrameSource implements FrameSource {
+    private static final String IMAGE_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String STREAM_METADATA_FORMAT = "javax_imageio_gif_stream_1.0";
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+    // GIF delays are in hundredths of a second.
+    private static final int MILLIS_IN_DELAY_UNIT = 10;
+
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final BufferedImage canvas;
+    // the pixels of the canvas, shared by the returned image.
+    private final int[] plane;
+    private final Image frameImage;
+    private final int frameCount;
+    private int nextIndex = 0;
+    private int frameDelayMillis = 0;
+    // the disposal of the last frame, applied when the next one is read.
+    private String pendingDisposal;
+    private int disposalLeft;
+    private int disposalTop;
+    private int disposalWidth;
+    private int disposalHeight;
+    // the canvas before the last frame, when it restores to previous.
+    private int[] previousPlane;
+
+    /**
+     * Opens the given GIF file.
+     *
+     * @param filename the GIF file
+     * @throws IOException if the file cannot be opened as a GIF
+     */
+    public GifFrameSource(String filename) throws IOException {
+        input = ImageIO.createImageInputStream(new File(filename));
+        if (input == null) {
+            throw new IOException("Cannot open image: " + filename);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("No GIF reader available.");
+        }
+        reader = readers.next();
+        reader.setInput(input);
+        frameCount = reader.getNumImages(true);
+
+        Dimension screen = getLogicalScreenSize(reader.getStreamMetadata());
+        if (screen == null) {
+            screen = new Dimension(reader.getWidth(0), reader.getHeight(0));
+        }
+        // an opaque canvas stays opaque under drawImage, as Image expects.
+        canvas = new BufferedImage(screen.width, screen.height,
+                BufferedImage.TYPE_INT_ARGB);
+        plane = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        frameImage = new Image(plane, screen.width, screen.height);
+        clear(0, 0, screen.width, screen.height);
+    }
+
+    @Override
+    public Image nextFrame() throws IOException {
+        if (nextIndex >= frameCount) {
+            return null;
+        }
+        BufferedImage frame = reader.read(nextIndex);
+        Node metadata = reader.getImageMetadata(nextIndex)
+                .getAsTree(IMAGE_METADATA_FORMAT);
+        Node descriptor = getChild(metadata, "ImageDescriptor");
+        Node control = getChild(metadata, "GraphicControlExtension");
+        nextIndex++;
+
+        int left = getIntAttribute(descriptor, "imageLeftPosition");
+        int top = getIntAttribute(descriptor, "imageTopPosition");
+        String disposal = getAttribute(control, "disposalMethod");
+        frameDelayMillis = getIntAttribute(control, "delayTime")
+                * MILLIS_IN_DELAY_UNIT;
+
+        applyPendingDisposal();
+        if (RESTORE_TO_PREVIOUS.equals(disposal)) {
+            if (previousPlane == null) {
+                previousPlane = new int[plane.length];
+            }
+            System.arraycopy(plane, 0, previousPlane, 0, plane.length);
+        }
+        Graphics2D graphics = canvas.createGraphics();
+        graphics.drawImage(frame, left, top, null);
+        graphics.dispose();
+
+        pendingDisposal = disposal;
+        disposalLeft = left;
+        disposalTop = top;
+        disposalWidth = frame.getWidth();
+        disposalHeight = frame.getHeight();
+        return frameImage;
+    }
+
+    @Override
+    public int getFrameDelayMillis() {
+        return frameDelayMillis;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.dispose();
+        input.close();
+    }
+
+    private void clear(int x, int y, int width, int height) {
+        Graphics2D graphics = canvas.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(x, y, width, height);
+        graphics.dispose();
+    }
+
+    /*
+     * Prepares the canvas for the next frame. Deferred until that frame is
+     * read, as the canvas is the returned image.
+     */
+    private void applyPendingDisposal() {
+        if (RESTORE_TO_BACKGROUND.equals(pendingDisposal)) {
+            clear(disposalLeft, disposalTop, disposalWidth, disposalHeight);
+        } else if (RESTORE_TO_PREVIOUS.equals(pendingDisposal)) {
+            System.arraycopy(previousPlane, 0, plane, 0, plane.length);
+        }
+        pendingDisposal = null;
+    }
+
+    private static Dimension getLogicalScreenSize(IIOMetadata streamMetadata) {
+        if (streamMetadata == null) {
+            return null;
+        }
+        Node screen = getChild(streamMetadata.getAsTree(STREAM_METADATA_FORMAT),
+                "LogicalScreenDescriptor");
+        int width = getIntAttribute(screen, "logicalScreenWidth");
+        int height = getIntAttribute(screen, "logicalScreenHeight");
+        return (width > 0 && height > 0) ? new Dimension(width, height) : null;
+    }
+
+    private static Node getChild(Node node, String name) {
+        for (Node child = node.getFirstChild(); child != null;
+             child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static String getAttribute(Node node, String name) {
+        if (node == null) {
+            return null;
+        }
+        Node attribute = node.getAttributes().getNamedItem(name);
+        return (attribute == null) ? null : attribute.getNodeValue();
+    }
+
+    private static int getIntAttribute(Node node, String name) {
+        String value = getAttribute(node, name);
+        return (value == null) ? 0 : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,144 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GifFrameSourceTest {
+
+    private static final int SIZE = 8;
+    private static final int BLACK = 0;
+    private static final int RED = 1;
+    private static final int GREY = 2;
+    private static final int GREEN = 3;
+    private static final int WHITE_RGB = 0xFFFFFF;
+    private static final int[] RGB = {0x000000, 0xFF0000, 0x808080, 0x00FF00};
+    private static final IndexColorModel PALETTE = new IndexColorModel(2, 4,
+            new byte[]{0, (byte) 0xFF, (byte) 0x80, 0},
+            new byte[]{0, 0, (byte) 0x80, (byte) 0xFF},
+            new byte[]{0, 0, (byte) 0x80, 0});
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testFramesAreCompositedWithTheirDisposal() throws IOException {
+        String gif = directory.resolve("frames.gif").toString();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(
+                new File(gif))) {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            writeFrame(writer, BLACK, 0, 0, SIZE, "none", 5);
+            writeFrame(writer, RED, 2, 2, 4, "restoreToBackgroundColor", 5);
+            writeFrame(writer, GREY, 0, 0, 2, "restoreToPrevious", 5);
+            writeFrame(writer, GREEN, 7, 7, 1, "none", 7);
+            writer.endWriteSequence();
+            writer.dispose();
+        }
+
+        int[][] expected = new int[SIZE][SIZE];
+        try (GifFrameSource frames = new GifFrameSource(gif)) {
+            // the first frame covers the whole screen.
+            Image first = frames.nextFrame();
+            assertEquals(50, frames.getFrameDelayMillis());
+            assertCanvas(expected, first);
+
+            // the red square is drawn over the black frame...
+            Image second = frames.nextFrame();
+            assertSame(first, second);
+            fill(expected, 2, 2, 4, RGB[RED]);
+            assertCanvas(expected, second);
+
+            // ...then cleared to the white background before the grey one.
+            fill(expected, 2, 2, 4, WHITE_RGB);
+            fill(expected, 0, 0, 2, RGB[GREY]);
+            assertCanvas(expected, frames.nextFrame());
+
+            // the grey square is undone before the green pixel.
+            fill(expected, 0, 0, 2, RGB[BLACK]);
+            fill(expected, 7, 7, 1, RGB[GREEN]);
+            assertCanvas(expected, frames.nextFrame());
+            assertEquals(70, frames.getFrameDelayMillis());
+
+            assertNull(frames.nextFrame());
+        }
+    }
+
+    private static void assertCanvas(int[][] expected, Image frame) {
+        assertEquals(SIZE, frame.getWidth());
+        assertEquals(SIZE, frame.getHeight());
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                assertEquals(0xFF000000 | expected[i][j], frame.getRGB(i, j),
+                        "pixel " + i + "," + j);
+            }
+        }
+    }
+
+    private static void fill(int[][] canvas, int top, int left, int size, int rgb) {
+        for (int i = top; i < top + size; i++) {
+            for (int j = left; j < left + size; j++) {
+                canvas[i][j] = rgb;
+            }
+        }
+    }
+
+    // writes a square of one palette colour at the given position.
+    private static void writeFrame(ImageWriter writer, int colorIndex, int top,
+                                   int left, int size, String disposal,
+                                   int delay) throws IOException {
+        BufferedImage frame = new BufferedImage(size, size,
+                BufferedImage.TYPE_BYTE_INDEXED, PALETTE);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                frame.getRaster().setSample(j, i, 0, colorIndex);
+            }
+        }
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+                new ImageTypeSpecifier(frame), null);
+        String format = metadata.getNativeMetadataFormatName();
+        Node tree = metadata.getAsTree(format);
+        IIOMetadataNode descriptor = child(tree, "ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", String.valueOf(left));
+        descriptor.setAttribute("imageTopPosition", String.valueOf(top));
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+        IIOMetadataNode control = child(tree, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", disposal);
+        control.setAttribute("delayTime", String.valueOf(delay));
+        try {
+            metadata.setFromTree(format, tree);
+        } catch (IIOInvalidTreeException e) {
+            throw new IOException(e);
+        }
+        writer.writeToSequence(new IIOImage(frame, null, metadata), null);
+    }
+
+    private static IIOMetadataNode child(Node node, String name) {
+        for (Node child = node.getFirstChild(); child != null;
+             child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name)) {
+                return (IIOMetadataNode) child;
+            }
+        }
+        IIOMetadataNode child = new IIOMetadataNode(name);
+        node.appendChild(child);
+        return child;
+    }
+}
@@ -1,39 +1,119 @@
 package image;
 
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * A package-private class of the package image.
+ * Pixels are kept as a single row-major plane of packed ARGB ints, so an
+ * image costs four bytes per pixel instead of one Color object per pixel.
+ * An image may also be a padded view of another image's plane: reads that
+ * fall outside the plane are answered with the pad colour.
  * @author Dan Nirel
  */
 public class Image {
 
-    private final Color[][] pixelArray;
+    // every stored pixel is fully opaque, just like new Color(int rgb).
+    private static final int OPAQUE_ALPHA = 0xFF000000;
+
+    private final int[] pixels;
     private final int width;
     private final int height;
+    // geometry of the backing plane within the (possibly padded) image.
+    private final int planeWidth;
+    private final int planeHeight;
+    private final int rowOffset;
+    private final int colOffset;
+    private final int padRGB;
 
     public Image(String filename) throws IOException {
-        BufferedImage im = ImageIO.read(new File(filename));
+        this(readImage(filename));
+        // the load stage is started by readImage and covers the plane copy.
+        PipelineMetrics.endStage(Stage.IMAGE_LOAD);
+    }
+
+    /**
+     * Creates an image holding a copy of the pixels of the given BufferedImage.
+     *
+     * @param im the decoded image
+     */
+    public Image(BufferedImage im) {
         width = im.getWidth();
         height = im.getHeight();
 
+        // bulk read of the whole raster, row-major with a stride of width.
+        pixels = im.getRGB(0, 0, width, height, null, 0, width);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= OPAQUE_ALPHA;
+        }
+        planeWidth = width;
+        planeHeight = height;
+        rowOffset = 0;
+        colOffset = 0;
+        padRGB = 0;
+    }
 
-        pixelArray = new Color[height][width];
+    public Image(Color[][] pixelArray, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
-                pixelArray[i][j]=new Color(im.getRGB(j, i));
+                pixels[i * width + j] = pixelArray[i][j].getRGB();
             }
         }
+        this.planeWidth = width;
+        this.planeHeight = height;
+        this.rowOffset = 0;
+        this.colOffset = 0;
+        this.padRGB = 0;
     }
 
-    public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+    /**
+     * Creates an image over an existing packed ARGB plane, without copying it.
+     *
+     * @param pixels row-major packed ARGB values, of length width * height
+     * @param width  the width of the image
+     * @param height the height of the image
+     */
+    public Image(int[] pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.planeWidth = width;
+        this.planeHeight = height;
+        this.rowOffset = 0;
+        this.colOffset = 0;
+        this.padRGB = 0;
+    }
+
+    /*
+     * Creates a padded view of the source image, sharing its pixel plane.
+     * The source is placed at (rowOffset, colOffset) and every other pixel
+     * reads as padRGB.
+     */
+    Image(Image source, int width, int height, int rowOffset, int colOffset,
+          int padRGB) {
+        // a view of an already padded image keeps pointing at the original
+        // plane, unless the two pads disagree and the source must be flattened.
+        if (source.isPadded() && source.padRGB != padRGB) {
+            source = new Image(source.copyPixels(), source.width, source.height);
+        }
+        this.pixels = source.pixels;
         this.width = width;
         this.height = height;
+        this.planeWidth = source.planeWidth;
+        this.planeHeight = source.planeHeight;
+        this.rowOffset = source.rowOffset + rowOffset;
+        this.colOffset = source.colOffset + colOffset;
+        this.padRGB = padRGB;
     }
 
     public int getWidth() {
@@ -44,20 +124,102 @@ public class Image {
         return height;
     }
 
+    /**
+     * Compatibility view of a single pixel. Allocates a Color, so hot loops
+     * should prefer {@link #getRGB(int, int)}.
+     */
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(getRGB(x, y), true);
+    }
+
+    /**
+     * Returns the packed ARGB value of the pixel at row x and column y.
+     */
+    public int getRGB(int x, int y) {
+        int planeRow = x - rowOffset;
+        int planeCol = y - colOffset;
+        if (planeRow < 0 || planeRow >= planeHeight
+                || planeCol < 0 || planeCol >= planeWidth) {
+            return padRGB;
+        }
+        return pixels[planeRow * planeWidth + planeCol];
+    }
+
+    /*
+     * Copies length pixels of row x, starting at column y, into dst.
+     */
+    void getRGBRow(int x, int y, int length, int[] dst, int dstOffset) {
+        int planeRow = x - rowOffset;
+        if (planeRow < 0 || planeRow >= planeHeight) {
+            Arrays.fill(dst, dstOffset, dstOffset + length, padRGB);
+            return;
+        }
+        int planeStart = Math.max(y - colOffset, 0);
+        int planeEnd = Math.min(y - colOffset + length, planeWidth);
+        if (planeStart >= planeEnd) {
+            Arrays.fill(dst, dstOffset, dstOffset + length, padRGB);
+            return;
+        }
+        int leadingPad = planeStart - (y - colOffset);
+        int copied = planeEnd - planeStart;
+        Arrays.fill(dst, dstOffset, dstOffset + leadingPad, padRGB);
+        System.arraycopy(pixels, planeRow * planeWidth + planeStart,
+                dst, dstOffset + leadingPad, copied);
+        Arrays.fill(dst, dstOffset + leadingPad + copied,
+                dstOffset + length, padRGB);
+    }
+
+    private static BufferedImage readImage(String filename) throws IOException {
+        PipelineMetrics.startStage(Stage.IMAGE_LOAD);
+        BufferedImage im = ImageIO.read(new File(filename));
+        if (im == null) {
+            throw new IOException("Unsupported image format: " + filename);
+        }
+        return im;
+    }
+
+    // the backing plane, shared with ImageManager to avoid per-pixel calls.
+    int[] getPixelPlane() {
+        return pixels;
+    }
+
+    int getPlaneWidth() {
+        return planeWidth;
+    }
+
+    int getPlaneHeight() {
+        return planeHeight;
+    }
+
+    int getRowOffset() {
+        return rowOffset;
+    }
+
+    int getColOffset() {
+        return colOffset;
+    }
+
+    int getPadRGB() {
+        return padRGB;
+    }
+
+    boolean isPadded() {
+        return planeWidth != width || planeHeight != height;
+    }
+
+    // the logical pixels of the image as a freshly allocated plane.
+    private int[] copyPixels() {
+        int[] copy = new int[width * height];
+        for (int i = 0; i < height; i++) {
+            getRGBRow(i, 0, width, copy, i * width);
+        }
+        return copy;
     }
 
     public void saveImage(String fileName){
-        // Initialize BufferedImage, assuming Color[][] is already properly populated.
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
+        BufferedImage bufferedImage = new BufferedImage(width, height,
                 BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
-            }
-        }
+        bufferedImage.setRGB(0, 0, width, height, copyPixels(), 0, width);
         File outputfile = new File(fileName+".jpeg");
         try {
             ImageIO.write(bufferedImage, "jpeg", outputfile);
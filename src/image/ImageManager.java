@@ -1,57 +1,75 @@
 package image;
 
-import java.awt.*;
+import metrics.Counter;
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 public class ImageManager {
 
-    private static final double BLUE_FACTOR = 0.0722;
-    private static final double GREEN_FACTOR = 0.7152;
-    private static final double RED_FACTOR = 0.2126;
+    static final int WHITE_RGB = 0xFFFFFFFF;
+    static final double BLUE_FACTOR = 0.0722;
+    static final double GREEN_FACTOR = 0.7152;
+    static final double RED_FACTOR = 0.2126;
+    private static final int OPAQUE_BLACK = 0xFF000000;
+    // indices of the per-tile sums of sumChannelsRow.
+    private static final int GREY_SUM = 0;
+    private static final int RED_SUM = 1;
+    private static final int GREEN_SUM = 2;
+    private static final int BLUE_SUM = 3;
+    private static final int CHANNEL_SUMS = 4;
 
     /**
      * Adds padding to the given image to make its dimensions the closest power of two.
      *
      * @param image the original image to be padded
-     * @return a new Image object with padding added, or the original image if no padding is needed
+     * @return a padded view of the image, or the original image if no padding is needed
      */
     public static Image imagePadding(Image image) {
+        PipelineMetrics.startStage(Stage.PADDING);
 
         int oldHeight = image.getHeight();
         int oldWidth = image.getWidth();
 
         // Calculating padding needed on each side
-        int verticalPadding =
-                (findClosestPowerOfTwo(oldHeight) - oldHeight) / 2;
-        int horizontalPadding =
-                (findClosestPowerOfTwo(oldWidth) - oldWidth) / 2;
+        int verticalPadding = getPadding(oldHeight);
+        int horizontalPadding = getPadding(oldWidth);
 
         int newHeight = oldHeight + (verticalPadding * 2);
         int newWidth = oldWidth + (horizontalPadding * 2);
 
         // If new dimensions are same as old ones, do nothing
         if (newWidth == oldWidth && newHeight == oldHeight) {
+            PipelineMetrics.endStage(Stage.PADDING);
             return image;
         }
 
-        // actually padding the image.
-        Color[][] paddedImage = new Color[newHeight][newWidth];
-        for (int i = 0; i < newHeight; i++) {
-            for (int j = 0; j < newWidth; j++) {
-                if (i < verticalPadding
-                        || i >= verticalPadding + oldHeight
-                        || j < horizontalPadding
-                        || j >= horizontalPadding + oldWidth) {
-                    paddedImage[i][j] = new Color(255, 255, 255);
-                } else {
-                    paddedImage[i][j] =
-                            image.getPixel(i - verticalPadding,
-                                    j - horizontalPadding);
-                }
-            }
-        }
-        return new Image(paddedImage, newWidth, newHeight);
+        // padding is virtual: the original plane is shared, and reads outside
+        // of it are answered with white.
+        Image paddedImage = new Image(image, newWidth, newHeight,
+                verticalPadding, horizontalPadding, WHITE_RGB);
+        PipelineMetrics.endStage(Stage.PADDING);
+        return paddedImage;
+    }
+
+
+    // padding needed on each side of a dimension of the given size.
+    static int getPadding(int size) {
+        return (findClosestPowerOfTwo(size) - size) / 2;
     }
 
+    /**
+     * Returns the size of a dimension of the given size once padded, as by
+     * {@link #imagePadding(Image)}.
+     *
+     * @param size the width or height of an image
+     * @return the width or height of the padded image
+     */
+    public static int getPaddedSize(int size) {
+        return size + getPadding(size) * 2;
+    }
 
     // finding the Closest bigger power of two given an Integer
     private static int findClosestPowerOfTwo(int num) {
@@ -68,6 +86,13 @@ public class ImageManager {
         return image.getWidth() / resolution;
     }
 
+    /**
+     * Divides the image into square sub-images, copying the pixels of each one.
+     *
+     * @param image      the image to divide
+     * @param resolution the number of sub-images in a row
+     * @return the grid of sub-images
+     */
     public static Image[][] divideToSubImages(Image image, int resolution) {
 
         // calculating number of subImages in column.
@@ -86,17 +111,153 @@ public class ImageManager {
     }
 
 
+    /**
+     * Calculates the brightness of every sub-image of the given resolution.
+     *
+     * @param image      the image to divide
+     * @param resolution the number of sub-images in a row
+     * @return the brightness grid, indexed by sub-image row and column
+     */
+    public static double[][] getBrightnessGrid(Image image, int resolution) {
+        return getBrightnessGrid(image, resolution, 1);
+    }
+
+    /**
+     * Calculates the brightness of every sub-image of the given resolution,
+     * splitting the rows of sub-images over a fork/join pool. Small images
+     * are computed sequentially. The result is identical to the sequential
+     * computation for any parallelism.
+     *
+     * @param image       the image to divide
+     * @param resolution  the number of sub-images in a row
+     * @param parallelism the number of worker threads to use; 1 means sequential
+     * @return the brightness grid, indexed by sub-image row and column
+     */
+    public static double[][] getBrightnessGrid(Image image, int resolution,
+                                               int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        int subImagesInCol = countVertiaclSubImages(image, resolution);
+        int subImageSize = getSubImageSize(image, resolution);
+        double[][] brightnessGrid = new double[subImagesInCol][resolution];
+        PipelineMetrics.startStage(Stage.BRIGHTNESS_GRID);
+        PipelineMetrics.add(Counter.TILES_PROCESSED,
+                (long) subImagesInCol * resolution);
+
+        long pixels = (long) image.getWidth() * image.getHeight();
+        if (parallelism == 1 || pixels <= BrightnessGridTask.MIN_PIXELS_PER_TASK) {
+            fillBrightnessRows(image, brightnessGrid, subImageSize, 0,
+                    subImagesInCol);
+            PipelineMetrics.endStage(Stage.BRIGHTNESS_GRID);
+            return brightnessGrid;
+        }
+
+        BrightnessGridTask task = new BrightnessGridTask(image, brightnessGrid,
+                subImageSize, 0, subImagesInCol);
+        if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        PipelineMetrics.endStage(Stage.BRIGHTNESS_GRID);
+        return brightnessGrid;
+    }
+
+    /**
+     * Calculates the brightness and the average colour of every sub-image of
+     * the given resolution in a single pass over the pixels. The brightness
+     * is identical to that of {@link #getBrightnessGrid(Image, int)}.
+     *
+     * @param image      the image to divide
+     * @param resolution the number of sub-images in a row
+     * @param colorGrid  filled with the average opaque RGB of each sub-image;
+     *                   must have a row of length resolution per sub-image row
+     * @return the brightness grid, indexed by sub-image row and column
+     */
+    public static double[][] getBrightnessGrid(Image image, int resolution,
+                                               int[][] colorGrid) {
+        int subImagesInCol = countVertiaclSubImages(image, resolution);
+        if (colorGrid.length != subImagesInCol
+                || (subImagesInCol > 0 && colorGrid[0].length != resolution)) {
+            throw new IllegalArgumentException(
+                    "Grid does not match the image dimensions.");
+        }
+        int subImageSize = getSubImageSize(image, resolution);
+        double[][] brightnessGrid = new double[subImagesInCol][resolution];
+        PipelineMetrics.startStage(Stage.BRIGHTNESS_GRID);
+        PipelineMetrics.add(Counter.TILES_PROCESSED,
+                (long) subImagesInCol * resolution);
+
+        long pixelCount = (long) subImageSize * subImageSize;
+        long[] sums = new long[CHANNEL_SUMS];
+        for (int i = 0; i < subImagesInCol; i++) {
+            for (int j = 0; j < resolution; j++) {
+                Arrays.fill(sums, 0);
+                for (int r = 0; r < subImageSize; r++) {
+                    sumChannelsRow(image, i * subImageSize + r,
+                            j * subImageSize, subImageSize, sums);
+                }
+                // returning normalized value (0 to 1)
+                brightnessGrid[i][j] =
+                        ((double) sums[GREY_SUM] / (pixelCount * 255));
+                colorGrid[i][j] = OPAQUE_BLACK
+                        | averageChannel(sums[RED_SUM], pixelCount) << 16
+                        | averageChannel(sums[GREEN_SUM], pixelCount) << 8
+                        | averageChannel(sums[BLUE_SUM], pixelCount);
+            }
+        }
+        PipelineMetrics.endStage(Stage.BRIGHTNESS_GRID);
+        return brightnessGrid;
+    }
+
+    /**
+     * Calculates the brightness of every sub-image into an existing grid, so
+     * that repeated calls (e.g. for the frames of an animation) allocate nothing.
+     * The resolution is the number of columns of the grid.
+     *
+     * @param image          the image to divide
+     * @param brightnessGrid the grid to fill, indexed by sub-image row and column
+     */
+    public static void fillBrightnessGrid(Image image, double[][] brightnessGrid) {
+        int resolution = brightnessGrid[0].length;
+        if (brightnessGrid.length != countVertiaclSubImages(image, resolution)) {
+            throw new IllegalArgumentException(
+                    "Grid does not match the image dimensions.");
+        }
+        PipelineMetrics.startStage(Stage.BRIGHTNESS_GRID);
+        PipelineMetrics.add(Counter.TILES_PROCESSED,
+                (long) brightnessGrid.length * resolution);
+        fillBrightnessRows(image, brightnessGrid,
+                getSubImageSize(image, resolution), 0, brightnessGrid.length);
+        PipelineMetrics.endStage(Stage.BRIGHTNESS_GRID);
+    }
+
+    // fills the given rows of sub-images of the brightness grid.
+    static void fillBrightnessRows(Image image, double[][] brightnessGrid,
+                                   int subImageSize, int startRow, int endRow) {
+        for (int i = startRow; i < endRow; i++) {
+            for (int j = 0; j < brightnessGrid[i].length; j++) {
+                brightnessGrid[i][j] = getTileBrightness(image,
+                        i * subImageSize, j * subImageSize, subImageSize);
+            }
+        }
+    }
+
     private static Image createSubImage(Image image, int startRowIdx,
                                  int startColIdx, int subImageSize) {
 
-        Color[][] newSubImage = new Color[subImageSize][subImageSize];
+        int[] newSubImage = new int[subImageSize * subImageSize];
 
-        // coping the SubImage part from the source image
+        // coping the SubImage part from the source image, row by row
         for (int i = 0; i < subImageSize; i++) {
-            for (int j = 0; j < subImageSize; j++) {
-                newSubImage[i][j] = image.getPixel(startRowIdx + i,
-                        startColIdx + j);
-            }
+            image.getRGBRow(startRowIdx + i, startColIdx, subImageSize,
+                    newSubImage, i * subImageSize);
         }
         return new Image(newSubImage, subImageSize, subImageSize);
     }
@@ -108,26 +269,232 @@ public class ImageManager {
      * @return the brightness of the image as a value between 0 and 1
      */
     public static double getImageBrightness(Image image) {
-        int pixelSumValue = 0;
-        int pixelCount = 0;
-        for (int i = 0; i < image.getHeight(); i++) {
-            for (int j = 0; j < image.getWidth(); j++) {
-                pixelSumValue += greyscalePixel(image.getPixel(i, j));
-                pixelCount++;
-            }
+        return getImageBrightness(new ImageRegion(image));
+    }
+
+    /**
+     * Calculates the brightness of the given region, reading the pixels
+     * straight from its parent image.
+     *
+     * @param region the region whose brightness is to be calculated
+     * @return the brightness of the region as a value between 0 and 1
+     */
+    public static double getImageBrightness(ImageRegion region) {
+        Image image = region.getImage();
+        long pixelSumValue = 0;
+        long pixelCount = (long) region.getWidth() * region.getHeight();
+        for (int i = 0; i < region.getHeight(); i++) {
+            pixelSumValue += sumGreyscaleRow(image,
+                    region.getStartRowIdx() + i, region.getStartColIdx(),
+                    region.getWidth());
+        }
+        // returning normalized value (0 to 1)
+        return ((double) pixelSumValue / (pixelCount * 255));
+    }
+
+    // the brightness of a square tile, without allocating a region for it.
+    private static double getTileBrightness(Image image, int startRowIdx,
+                                            int startColIdx, int subImageSize) {
+        long pixelSumValue = 0;
+        for (int i = 0; i < subImageSize; i++) {
+            pixelSumValue += sumGreyscaleRow(image, startRowIdx + i,
+                    startColIdx, subImageSize);
         }
+        long pixelCount = (long) subImageSize * subImageSize;
         // returning normalized value (0 to 1)
         return ((double) pixelSumValue / (pixelCount * 255));
     }
 
+    /*
+     * Sums the greyscale values of length pixels of the given row, starting
+     * at the given column. Pixels outside of the image's plane are padding,
+     * and are all added at once as multiples of the pad's greyscale value.
+     */
+    private static int sumGreyscaleRow(Image image, int row, int col,
+                                       int length) {
+        int planeRow = row - image.getRowOffset();
+        int planeStart = Math.max(col - image.getColOffset(), 0);
+        int planeEnd = Math.min(col - image.getColOffset() + length,
+                image.getPlaneWidth());
+        if (planeRow < 0 || planeRow >= image.getPlaneHeight()
+                || planeStart >= planeEnd) {
+            return length * greyscalePixel(image.getPadRGB());
+        }
+
+        int[] plane = image.getPixelPlane();
+        int rowStart = planeRow * image.getPlaneWidth();
+        int sum = (length - (planeEnd - planeStart))
+                * greyscalePixel(image.getPadRGB());
+        return sum + LuminanceKernel.INSTANCE.sumGreyscale(plane,
+                rowStart + planeStart, rowStart + planeEnd);
+    }
+
+    /**
+     * Downsamples a square tile to side x side cells, each holding the mean
+     * greyscale value of the pixels it covers.
+     *
+     * @param image       the image the tile is in
+     * @param startRowIdx the row of the tile's top-left pixel
+     * @param startColIdx the column of the tile's top-left pixel
+     * @param tileSize    the width and height of the tile in pixels
+     * @param greyscale   filled row-major with side * side values in [0, 255]
+     * @param side        the number of cells in a row of the result, at most
+     *                    tileSize
+     */
+    public static void getTileGreyscale(Image image, int startRowIdx,
+                                        int startColIdx, int tileSize,
+                                        int[] greyscale, int side) {
+        if (side < 1 || side > tileSize) {
+            throw new IllegalArgumentException(
+                    "A tile cannot be downsampled to more cells than pixels.");
+        }
+        int planeRow = startRowIdx - image.getRowOffset();
+        int planeCol = startColIdx - image.getColOffset();
+        if (planeRow + tileSize <= 0 || planeRow >= image.getPlaneHeight()
+                || planeCol + tileSize <= 0 || planeCol >= image.getPlaneWidth()) {
+            // a tile of padding only.
+            Arrays.fill(greyscale, 0, side * side,
+                    greyscalePixel(image.getPadRGB()));
+            return;
+        }
+        Arrays.fill(greyscale, 0, side * side, 0);
+        if (tileSize % side == 0) {
+            sumEqualCells(image, startRowIdx, startColIdx, tileSize / side,
+                    greyscale, side);
+            return;
+        }
+        int padGreyscale = greyscalePixel(image.getPadRGB());
+        int[] plane = image.getPixelPlane();
+        for (int r = 0; r < side; r++) {
+            int firstRow = ceilDiv(r * tileSize, side);
+            int endRow = ceilDiv((r + 1) * tileSize, side);
+            for (int i = firstRow; i < endRow; i++) {
+                int pixelRow = planeRow + i;
+                boolean padRow = pixelRow < 0 || pixelRow >= image.getPlaneHeight();
+                int rowStart = pixelRow * image.getPlaneWidth();
+                int pixelCol = planeCol;
+                // the cells of a row cover consecutive runs of its pixels.
+                for (int c = 0; c < side; c++) {
+                    int endCol = planeCol + ceilDiv((c + 1) * tileSize, side);
+                    int sum = 0;
+                    for (; pixelCol < endCol; pixelCol++) {
+                        sum += (padRow || pixelCol < 0
+                                || pixelCol >= image.getPlaneWidth())
+                                ? padGreyscale
+                                : greyscalePixel(plane[rowStart + pixelCol]);
+                    }
+                    greyscale[r * side + c] += sum;
+                }
+            }
+        }
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                greyscale[r * side + c] /= cellSpan(r, tileSize, side)
+                        * cellSpan(c, tileSize, side);
+            }
+        }
+    }
+
+    /*
+     * Averages cells of cellSize x cellSize pixels into greyscale, which must
+     * be zeroed. Each row of pixels is summed run by run, one run per cell.
+     */
+    private static void sumEqualCells(Image image, int startRowIdx,
+                                      int startColIdx, int cellSize,
+                                      int[] greyscale, int side) {
+        int[] plane = image.getPixelPlane();
+        int planeCol = startColIdx - image.getColOffset();
+        boolean colsInPlane = planeCol >= 0
+                && planeCol + side * cellSize <= image.getPlaneWidth();
+        for (int i = 0; i < side * cellSize; i++) {
+            int cellRowStart = i / cellSize * side;
+            int planeRow = startRowIdx + i - image.getRowOffset();
+            if (!colsInPlane || planeRow < 0 || planeRow >= image.getPlaneHeight()) {
+                int col = startColIdx;
+                for (int c = 0; c < side; c++) {
+                    int sum = 0;
+                    for (int k = 0; k < cellSize; k++) {
+                        sum += greyscalePixel(image.getRGB(startRowIdx + i, col++));
+                    }
+                    greyscale[cellRowStart + c] += sum;
+                }
+                continue;
+            }
+            // the common case, with no padding in the row, reads the plane.
+            int position = planeRow * image.getPlaneWidth() + planeCol;
+            for (int c = 0; c < side; c++) {
+                int sum = 0;
+                for (int k = 0; k < cellSize; k++) {
+                    sum += greyscalePixel(plane[position++]);
+                }
+                greyscale[cellRowStart + c] += sum;
+            }
+        }
+        int cellPixels = cellSize * cellSize;
+        if (cellPixels > 1) {
+            for (int k = 0; k < side * side; k++) {
+                greyscale[k] /= cellPixels;
+            }
+        }
+    }
+
+    // the number of pixels p of a tile for which p * side / tileSize == cell.
+    private static int cellSpan(int cell, int tileSize, int side) {
+        return ceilDiv((cell + 1) * tileSize, side) - ceilDiv(cell * tileSize, side);
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /*
+     * Adds the greyscale, red, green and blue values of length pixels of the
+     * given row to sums, reading padding the same way as sumGreyscaleRow.
+     */
+    private static void sumChannelsRow(Image image, int row, int col,
+                                       int length, long[] sums) {
+        int planeRow = row - image.getRowOffset();
+        int planeStart = Math.max(col - image.getColOffset(), 0);
+        int planeEnd = Math.min(col - image.getColOffset() + length,
+                image.getPlaneWidth());
+        if (planeRow < 0 || planeRow >= image.getPlaneHeight()
+                || planeStart >= planeEnd) {
+            planeStart = 0;
+            planeEnd = 0;
+        }
+        addPixel(sums, image.getPadRGB(), length - (planeEnd - planeStart));
+
+        int[] plane = image.getPixelPlane();
+        int rowStart = planeRow * image.getPlaneWidth();
+        for (int j = planeStart; j < planeEnd; j++) {
+            addPixel(sums, plane[rowStart + j], 1);
+        }
+    }
+
+    // adds count copies of the given pixel to the channel sums.
+    private static void addPixel(long[] sums, int rgb, int count) {
+        sums[GREY_SUM] += (long) count * greyscalePixel(rgb);
+        sums[RED_SUM] += (long) count * ((rgb >> 16) & 0xFF);
+        sums[GREEN_SUM] += (long) count * ((rgb >> 8) & 0xFF);
+        sums[BLUE_SUM] += (long) count * (rgb & 0xFF);
+    }
+
+    // the rounded average of a channel summed over pixelCount pixels.
+    private static int averageChannel(long sum, long pixelCount) {
+        return (int) ((sum + pixelCount / 2) / pixelCount);
+    }
+
     /**
-     * Converts a color to its greyscale value using the luminance formula.
+     * Converts a packed ARGB pixel to its greyscale value using the luminance formula.
      *
-     * @param color the color to be converted to greyscale
-     * @return the greyscale value of the color
+     * @param rgb the packed ARGB pixel to be converted to greyscale
+     * @return the greyscale value of the pixel
      */
-    private static int greyscalePixel(Color color) {
-        return (int) (color.getRed() * RED_FACTOR + color.getGreen() * GREEN_FACTOR + color.getBlue() * BLUE_FACTOR);
+    static int greyscalePixel(int rgb) {
+        int red = (rgb >> 16) & 0xFF;
+        int green = (rgb >> 8) & 0xFF;
+        int blue = rgb & 0xFF;
+        return (int) (red * RED_FACTOR + green * GREEN_FACTOR + blue * BLUE_FACTOR);
     }
 }
 
@@ -1,8 +1,13 @@
 package image;
 
 import org.junit.jupiter.api.Test;
+import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import static org.junit.jupiter.api.Assertions.*;
 
 class ImageManagerTest {
@@ -55,4 +60,176 @@ class ImageManagerTest {
         assertEquals(4, paddedImage.getWidth());
         assertEquals(8, paddedImage.getHeight());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBrightnessGridWithColors() {
+        // a red image padded with white: 6x6 inside 8x8
+        Color[][] pixelArray = new Color[6][6];
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 6; j++) {
+                pixelArray[i][j] = new Color(200, 0, 0);
+            }
+        }
+        Image paddedImage = ImageManager.imagePadding(new Image(pixelArray, 6, 6));
+
+        int[][] colorGrid = new int[2][2];
+        double[][] brightnessGrid =
+                ImageManager.getBrightnessGrid(paddedImage, 2, colorGrid);
+
+        // the brightness is the same as without colours
+        assertArrayEquals(ImageManager.getBrightnessGrid(paddedImage, 2)[0],
+                brightnessGrid[0]);
+        assertArrayEquals(ImageManager.getBrightnessGrid(paddedImage, 2)[1],
+                brightnessGrid[1]);
+        // each 4x4 tile has 7 white padding pixels and 9 red ones
+        int expectedRed = (7 * 255 + 9 * 200 + 8) / 16;
+        int expectedOther = (7 * 255 + 8) / 16;
+        Color expected = new Color(expectedRed, expectedOther, expectedOther);
+        for (int[] row : colorGrid) {
+            for (int color : row) {
+                assertEquals(expected, new Color(color, true));
+            }
+        }
+    }
+
+    @Test
+    void testRawFrameMatchesDecodedImage() throws IOException {
+        // an odd-sized frame, so that it is padded on every side
+        int width = 13;
+        int height = 7;
+        int[] pixels = new int[width * height];
+        byte[] rgb24 = new byte[width * height * 3];
+        byte[] rgba = new byte[width * height * 4];
+        for (int k = 0; k < pixels.length; k++) {
+            int red = (k * 37) % 256;
+            int green = (k * 101) % 256;
+            int blue = (k * 13) % 256;
+            pixels[k] = 0xFF000000 | red << 16 | green << 8 | blue;
+            rgb24[3 * k] = (byte) red;
+            rgb24[3 * k + 1] = (byte) green;
+            rgb24[3 * k + 2] = (byte) blue;
+            rgba[4 * k] = (byte) red;
+            rgba[4 * k + 1] = (byte) green;
+            rgba[4 * k + 2] = (byte) blue;
+            rgba[4 * k + 3] = (byte) k;
+        }
+        double[][] expected = ImageManager.getBrightnessGrid(
+                ImageManager.imagePadding(new Image(pixels, width, height)), 4);
+
+        Path file = Files.createTempFile("frame", ".raw");
+        try {
+            Files.write(file, rgb24);
+            assertArrayEquals(expected, RawImageLoader.loadBrightnessGrid(file,
+                    width, height, RawPixelFormat.RGB24, 4));
+            Files.write(file, rgba);
+            assertArrayEquals(expected, RawImageLoader.loadBrightnessGrid(file,
+                    width, height, RawPixelFormat.RGBA, 4));
+            // a frame of the wrong size is refused
+            assertThrows(IOException.class, () -> RawImageLoader.loadBrightnessGrid(
+                    file, width, height, RawPixelFormat.RGB24, 4));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testParallelBrightnessGridMatchesSequential() {
+        // odd sizes, padded to 1023x511, and resolutions whose tile rows do
+        // not split evenly between the workers.
+        int width = 1001;
+        int height = 383;
+        int[] pixels = new int[width * height];
+        for (int k = 0; k < pixels.length; k++) {
+            pixels[k] = 0xFF000000 | (k * 0x9E3779B1 >>> 8);
+        }
+        Image paddedImage = ImageManager.imagePadding(new Image(pixels, width, height));
+        assertEquals(1023, paddedImage.getWidth());
+
+        for (int resolution : new int[]{1, 3, 7, 64, 511, 1023}) {
+            double[][] sequential = ImageManager.getBrightnessGrid(paddedImage,
+                    resolution, 1);
+            for (int parallelism : new int[]{1, 2, 8}) {
+                double[][] parallel = ImageManager.getBrightnessGrid(paddedImage,
+                        resolution, parallelism);
+                assertEquals(sequential.length, parallel.length);
+                for (int i = 0; i < sequential.length; i++) {
+                    assertArrayEquals(sequential[i], parallel[i],
+                            "resolution " + resolution + ", parallelism " + parallelism);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testStreamingGridMatchesDecodedImage() throws IOException {
+        // odd sizes, so that the image is padded, and taller than a band.
+        int width = 301;
+        int height = 517;
+        BufferedImage decoded = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                decoded.setRGB(j, i, (i * 7 + j * 3) % 256 << 16
+                        | (i * j) % 256 << 8 | (i + j * 11) % 256);
+            }
+        }
+        Path file = Files.createTempFile("streaming", ".png");
+        try {
+            ImageIO.write(decoded, "png", file.toFile());
+            Image paddedImage = ImageManager.imagePadding(new Image(file.toString()));
+            for (int resolution : new int[]{1, 4, 16, 64}) {
+                assertArrayEquals(ImageManager.getBrightnessGrid(paddedImage, resolution),
+                        StreamingImageLoader.loadBrightnessGrid(file.toString(),
+                                resolution));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testLargeBrightTilesDoNotOverflow() {
+        // a bright 6000x4000 frame, padded to 8192x4096: at resolution 2 a
+        // tile is 4096x4096 pixels, whose sums exceed an int.
+        int width = 6000;
+        int height = 4000;
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, 0xFFF0E0D0);
+        Image paddedImage = ImageManager.imagePadding(new Image(pixels, width, height));
+        // each tile holds 6000 * 4000 / 2 frame pixels, the rest is white.
+        long framePixels = (long) width * height / 2;
+        long tilePixels = 4096L * 4096;
+        long tileSum = framePixels * ImageManager.greyscalePixel(0xFFF0E0D0)
+                + (tilePixels - framePixels) * ImageManager.greyscalePixel(0xFFFFFFFF);
+        double brightness = (double) tileSum / (tilePixels * 255);
+        double[][] expected = {{brightness, brightness}};
+
+        BrightnessGridAccumulator accumulator =
+                new BrightnessGridAccumulator(width, height, 2);
+        int[] rgbRow = new int[width];
+        for (int i = 0; i < height; i++) {
+            System.arraycopy(pixels, i * width, rgbRow, 0, width);
+            accumulator.addRow(i, rgbRow);
+        }
+        assertArrayEquals(expected, accumulator.getBrightnessGrid());
+
+        int[][] colorGrid = new int[1][2];
+        assertArrayEquals(expected,
+                ImageManager.getBrightnessGrid(paddedImage, 2, colorGrid));
+        for (int color : colorGrid[0]) {
+            assertEquals(averageWithWhite(0xF0, framePixels, tilePixels),
+                    (color >> 16) & 0xFF);
+            assertEquals(averageWithWhite(0xE0, framePixels, tilePixels),
+                    (color >> 8) & 0xFF);
+            assertEquals(averageWithWhite(0xD0, framePixels, tilePixels),
+                    color & 0xFF);
+        }
+    }
+
+    // the rounded average of a channel over a tile padded with white.
+    private static long averageWithWhite(int value, long framePixels,
+                                         long tilePixels) {
+        long sum = value * framePixels + 255 * (tilePixels - framePixels);
+        return (sum + tilePixels / 2) / tilePixels;
+    }
+}
@@ -0,0 +1,81 @@
+package image;
+
+import java.awt.*;
+
+/**
+ * A rectangular view over part of an {@link Image}. The view only records
+ * its offset and size within the parent image - no pixel is ever copied -
+ * so a whole grid of tiles costs a handful of bytes per tile.
+ */
+public class ImageRegion {
+
+    private final Image image;
+    private final int startRowIdx;
+    private final int startColIdx;
+    private final int width;
+    private final int height;
+
+    /**
+     * Creates a view of the given part of the image.
+     *
+     * @param image       the parent image
+     * @param startRowIdx the row of the parent image where the region starts
+     * @param startColIdx the column of the parent image where the region starts
+     * @param width       the number of columns in the region
+     * @param height      the number of rows in the region
+     */
+    public ImageRegion(Image image, int startRowIdx, int startColIdx,
+                       int width, int height) {
+        if (startRowIdx < 0 || startColIdx < 0
+                || startRowIdx + height > image.getHeight()
+                || startColIdx + width > image.getWidth()) {
+            throw new IllegalArgumentException("Region exceeds image boundaries.");
+        }
+        this.image = image;
+        this.startRowIdx = startRowIdx;
+        this.startColIdx = startColIdx;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Creates a view covering the whole image.
+     */
+    public ImageRegion(Image image) {
+        this(image, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    public Image getImage() {
+        return image;
+    }
+
+    public int getStartRowIdx() {
+        return startRowIdx;
+    }
+
+    public int getStartColIdx() {
+        return startColIdx;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the packed ARGB value of the pixel at row x and column y of the region.
+     */
+    public int getRGB(int x, int y) {
+        return image.getRGB(startRowIdx + x, startColIdx + y);
+    }
+
+    /**
+     * Compatibility view of a single pixel of the region.
+     */
+    public Color getPixel(int x, int y) {
+        return image.getPixel(startRowIdx + x, startColIdx + y);
+    }
+}
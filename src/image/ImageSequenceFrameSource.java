@@ -0,0 +1,43 @@
+package image;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Frames read from numbered image files, such as frame0001.png, frame0002.png
+ * and so on. The file names are given by a String.format pattern with a
+ * single integer argument, e.g. "frames/frame%04d.png".
+ */
+public class ImageSequenceFrameSource implements FrameSource {
+
+    private final String filenamePattern;
+    private int nextIndex;
+
+    /**
+     * @param filenamePattern the file name pattern of the frames
+     * @param firstIndex      the number of the first frame
+     */
+    public ImageSequenceFrameSource(String filenamePattern, int firstIndex) {
+        this.filenamePattern = filenamePattern;
+        this.nextIndex = firstIndex;
+    }
+
+    @Override
+    public Image nextFrame() throws IOException {
+        String filename = String.format(filenamePattern, nextIndex);
+        if (!new File(filename).isFile()) {
+            return null;
+        }
+        nextIndex++;
+        return new Image(filename);
+    }
+
+    @Override
+    public int getFrameDelayMillis() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
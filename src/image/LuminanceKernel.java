@@ -0,0 +1,80 @@
+package image;
+
+import java.util.logging.Logger;
+
+/*
+ * Sums the greyscale values of a run of packed RGB pixels, exactly like
+ * adding up ImageManager.greyscalePixel of each of them: every pixel is
+ * converted with the same double products, added in the same order and
+ * truncated by the same int cast, and only the int sum is reordered.
+ * INSTANCE is the scalar implementation, unless -Dasciiart.vector=true is
+ * given and the JVM runs with --add-modules jdk.incubator.vector, in which
+ * case it is a Vector API implementation. Without vector intrinsics for the
+ * running CPU, the vector code is slower than the scalar table lookups,
+ * hence the opt-in. The vector class lives in the separate src-vector
+ * source root, built by the vector Maven profile only, and is loaded
+ * reflectively, so that the rest of the code builds and runs without the
+ * module; when it is missing, the scalar implementation is used.
+ */
+abstract class LuminanceKernel {
+
+    // set to true to use the vector kernel when the module is present.
+    static final String VECTOR_PROPERTY = "asciiart.vector";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "image.VectorLuminanceKernel";
+
+    static final LuminanceKernel SCALAR = new ScalarLuminanceKernel();
+    static final LuminanceKernel INSTANCE = load();
+
+    /*
+     * Returns the sum of the greyscale values of pixels[from, to).
+     */
+    abstract int sumGreyscale(int[] pixels, int from, int to);
+
+    private static LuminanceKernel load() {
+        if (!Boolean.getBoolean(VECTOR_PROPERTY)
+                || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (LuminanceKernel) Class.forName(VECTOR_KERNEL)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            Logger.getGlobal().warning("Vector kernel unavailable, using scalar code.");
+            return SCALAR;
+        }
+    }
+
+    /*
+     * Looks the three products up instead of converting and multiplying: a
+     * channel has 256 values, and each table entry is the very double that
+     * greyscalePixel computes for it.
+     */
+    private static final class ScalarLuminanceKernel extends LuminanceKernel {
+        private static final int CHANNEL_VALUES = 256;
+        private static final int CHANNEL_MASK = 0xFF;
+        private static final double[] RED_PRODUCTS = products(ImageManager.RED_FACTOR);
+        private static final double[] GREEN_PRODUCTS = products(ImageManager.GREEN_FACTOR);
+        private static final double[] BLUE_PRODUCTS = products(ImageManager.BLUE_FACTOR);
+
+        @Override
+        int sumGreyscale(int[] pixels, int from, int to) {
+            int sum = 0;
+            for (int j = from; j < to; j++) {
+                int rgb = pixels[j];
+                sum += (int) (RED_PRODUCTS[(rgb >> 16) & CHANNEL_MASK]
+                        + GREEN_PRODUCTS[(rgb >> 8) & CHANNEL_MASK]
+                        + BLUE_PRODUCTS[rgb & CHANNEL_MASK]);
+            }
+            return sum;
+        }
+
+        private static double[] products(double factor) {
+            double[] products = new double[CHANNEL_VALUES];
+            for (int value = 0; value < CHANNEL_VALUES; value++) {
+                products[value] = value * factor;
+            }
+            return products;
+        }
+    }
+}
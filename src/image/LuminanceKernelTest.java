@@ -0,0 +1,70 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class LuminanceKernelTest {
+
+    // pixels per sum, long enough for several vector steps and a tail.
+    private static final int CHUNK = 61;
+
+    @Test
+    void testVectorKernelIsLoadedWithTheModule() {
+        // mvn -Pvector runs the tests with the module and -Dasciiart.vector=true
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+        assertNotSame(LuminanceKernel.SCALAR, LuminanceKernel.INSTANCE);
+    }
+
+    @Test
+    void testEveryColourMatchesGreyscalePixel() {
+        // every 24-bit colour, with a varying alpha that must be ignored
+        int[] pixels = new int[1 << 24];
+        for (int rgb = 0; rgb < pixels.length; rgb++) {
+            pixels[rgb] = (rgb * 31) << 24 | rgb;
+        }
+        for (int from = 0; from < pixels.length; from += CHUNK) {
+            int to = Math.min(from + CHUNK, pixels.length);
+            int expected = referenceSum(pixels, from, to);
+            assertEquals(expected, LuminanceKernel.SCALAR.sumGreyscale(pixels, from, to));
+            if (expected != LuminanceKernel.INSTANCE.sumGreyscale(pixels, from, to)) {
+                fail("Sums differ in [" + from + ", " + to + ")");
+            }
+        }
+    }
+
+    @Test
+    void testRunsOfAnyLengthAndOffset() {
+        Random random = new Random(42);
+        int[] pixels = new int[4096];
+        for (int k = 0; k < pixels.length; k++) {
+            pixels[k] = random.nextInt();
+        }
+        for (int length = 0; length <= 70; length++) {
+            for (int from = 0; from < 9; from++) {
+                assertEquals(referenceSum(pixels, from, from + length),
+                        LuminanceKernel.INSTANCE.sumGreyscale(pixels, from,
+                                from + length));
+            }
+        }
+        // a whole row of white overflows nothing and truncates like the cast
+        Arrays.fill(pixels, ImageManager.WHITE_RGB);
+        assertEquals(pixels.length * ImageManager.greyscalePixel(ImageManager.WHITE_RGB),
+                LuminanceKernel.INSTANCE.sumGreyscale(pixels, 0, pixels.length));
+    }
+
+    private static int referenceSum(int[] pixels, int from, int to) {
+        int sum = 0;
+        for (int j = from; j < to; j++) {
+            int red = (pixels[j] >> 16) & 0xFF;
+            int green = (pixels[j] >> 8) & 0xFF;
+            int blue = pixels[j] & 0xFF;
+            sum += (int) (red * 0.2126 + green * 0.7152 + blue * 0.0722);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,104 @@
+package image;
+
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Computes the brightness grid of a raw, uncompressed frame file without
+ * decoding it through ImageIO. The file is memory-mapped a chunk of whole
+ * rows at a time and every row is summed straight from the mapping, so the
+ * heap holds one row and the grid, whatever the size of the file, and the
+ * pages of the file are read at disk speed by the operating system.
+ * <p>
+ * The grid is identical to padding the frame, as an image of the same
+ * pixels, with {@link ImageManager#imagePadding(Image)} and dividing it with
+ * {@link ImageManager#getBrightnessGrid(Image, int)}.
+ */
+public class RawImageLoader {
+
+    // bytes mapped at once; a mapping cannot exceed Integer.MAX_VALUE bytes.
+    private static final long MAX_CHUNK_BYTES = 256L * 1024 * 1024;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int GREY_TO_RGB = 0x010101;
+
+    private RawImageLoader() {
+    }
+
+    /**
+     * Maps the given raw frame file and computes its brightness grid.
+     *
+     * @param file       the raw frame, exactly width * height pixels long
+     * @param width      the width of the frame in pixels
+     * @param height     the height of the frame in pixels
+     * @param format     the layout of the pixels in the file
+     * @param resolution the number of sub-images in a row of the padded image
+     * @return the brightness grid, indexed by sub-image row and column
+     * @throws IOException if the file cannot be read or has the wrong size
+     */
+    public static double[][] loadBrightnessGrid(Path file, int width, int height,
+                                                RawPixelFormat format,
+                                                int resolution) throws IOException {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid frame dimensions.");
+        }
+        long rowBytes = (long) width * format.getBytesPerPixel();
+        if (rowBytes > MAX_CHUNK_BYTES) {
+            throw new IllegalArgumentException("Frame rows are too wide to map.");
+        }
+        PipelineMetrics.startStage(Stage.IMAGE_LOAD);
+        BrightnessGridAccumulator accumulator =
+                new BrightnessGridAccumulator(width, height, resolution);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != rowBytes * height) {
+                throw new IOException(String.format(
+                        "%s holds %d bytes, not the %d of a %dx%d %s frame.",
+                        file, channel.size(), rowBytes * height, width, height,
+                        format));
+            }
+            byte[] row = new byte[(int) rowBytes];
+            int[] rgbRow = new int[width];
+            int rowsPerChunk = (int) Math.min(height, MAX_CHUNK_BYTES / rowBytes);
+            for (int chunkStart = 0; chunkStart < height; chunkStart += rowsPerChunk) {
+                int chunkRows = Math.min(rowsPerChunk, height - chunkStart);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        chunkStart * rowBytes, chunkRows * rowBytes);
+                for (int i = 0; i < chunkRows; i++) {
+                    chunk.get(row);
+                    toRGB(row, format, rgbRow);
+                    accumulator.addRow(chunkStart + i, rgbRow);
+                }
+            }
+        }
+        double[][] brightnessGrid = accumulator.getBrightnessGrid();
+        PipelineMetrics.endStage(Stage.IMAGE_LOAD);
+        return brightnessGrid;
+    }
+
+    // packs a row of raw pixels into RGB ints, the way ImageManager reads them.
+    private static void toRGB(byte[] row, RawPixelFormat format, int[] rgbRow) {
+        switch (format) {
+            case GRAY8:
+                for (int j = 0; j < rgbRow.length; j++) {
+                    rgbRow[j] = (row[j] & BYTE_MASK) * GREY_TO_RGB;
+                }
+                break;
+            case RGB24:
+            case RGBA:
+                int stride = format.getBytesPerPixel();
+                for (int j = 0, k = 0; j < rgbRow.length; j++, k += stride) {
+                    rgbRow[j] = (row[k] & BYTE_MASK) << 16
+                            | (row[k + 1] & BYTE_MASK) << 8
+                            | (row[k + 2] & BYTE_MASK);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown pixel format " + format);
+        }
+    }
+}
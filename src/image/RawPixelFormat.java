@@ -0,0 +1,28 @@
+package image;
+
+/**
+ * The pixel layouts of raw, uncompressed frames, read by
+ * {@link RawImageLoader}. Pixels are stored row-major without any header or
+ * row padding.
+ */
+public enum RawPixelFormat {
+    /** Three bytes per pixel: red, green and blue. */
+    RGB24(3),
+    /** Four bytes per pixel: red, green, blue and alpha, which is ignored. */
+    RGBA(4),
+    /** One greyscale byte per pixel. */
+    GRAY8(1);
+
+    private final int bytesPerPixel;
+
+    RawPixelFormat(int bytesPerPixel) {
+        this.bytesPerPixel = bytesPerPixel;
+    }
+
+    /**
+     * Returns the number of bytes each pixel takes.
+     */
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+}
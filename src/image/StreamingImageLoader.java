@@ -0,0 +1,212 @@
+package image;
+
+import metrics.PipelineMetrics;
+import metrics.Stage;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Computes the brightness grid of an image file without ever holding the
+ * whole decoded image. The reader decodes into a destination that keeps only
+ * a band of rows: every completed band is folded into the tile sums and
+ * dropped. Readers that do not write rows in order (e.g. interlaced PNG) are
+ * instead driven band by band through their source region, which costs
+ * extra decoding time but keeps the same memory bound. Peak memory is one
+ * band plus the grid, regardless of image size.
+ * <p>
+ * The grid is identical to padding the image with
+ * {@link ImageManager#imagePadding(Image)} and dividing it with
+ * {@link ImageManager#getBrightnessGrid(Image, int)}.
+ */
+public class StreamingImageLoader {
+
+    // rows decoded at once; bounds peak memory at BAND_HEIGHT * width pixels.
+    private static final int BAND_HEIGHT = 256;
+    private static final int RGB_BITS = 24;
+    private static final int[] RGB_MASKS = {0xFF0000, 0xFF00, 0xFF};
+
+    private StreamingImageLoader() {
+    }
+
+    /**
+     * Decodes the given image file band by band and computes its brightness grid.
+     *
+     * @param filename   the image file to decode
+     * @param resolution the number of sub-images in a row of the padded image
+     * @return the brightness grid, indexed by sub-image row and column
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public static double[][] loadBrightnessGrid(String filename, int resolution)
+            throws IOException {
+        // decoding and summing are interleaved, so both count as loading.
+        PipelineMetrics.startStage(Stage.IMAGE_LOAD);
+        try (ImageInputStream input =
+                     ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = getReader(input, filename);
+            try {
+                reader.setInput(input);
+                BrightnessGridAccumulator accumulator =
+                        new BrightnessGridAccumulator(reader.getWidth(0),
+                                reader.getHeight(0), resolution);
+                try {
+                    readStreaming(reader, accumulator);
+                } catch (IllegalStateException | IllegalArgumentException
+                         | IIOException e) {
+                    // the reader cannot stream into a band; start over by regions.
+                    accumulator = new BrightnessGridAccumulator(
+                            accumulator.getSourceWidth(),
+                            accumulator.getSourceHeight(), resolution);
+                    readBands(reader, accumulator);
+                }
+                double[][] brightnessGrid = accumulator.getBrightnessGrid();
+                PipelineMetrics.endStage(Stage.IMAGE_LOAD);
+                return brightnessGrid;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads the dimensions of the given image file from its header only.
+     *
+     * @param filename the image file
+     * @return the width and height of the image
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public static Dimension readDimensions(String filename) throws IOException {
+        try (ImageInputStream input =
+                     ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = getReader(input, filename);
+            try {
+                reader.setInput(input);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageReader getReader(ImageInputStream input, String filename)
+            throws IOException {
+        if (input == null) {
+            throw new IOException("Cannot open image: " + filename);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format: " + filename);
+        }
+        return readers.next();
+    }
+
+    private static void readStreaming(ImageReader reader,
+                                      BrightnessGridAccumulator accumulator)
+            throws IOException {
+        int width = accumulator.getSourceWidth();
+        int height = accumulator.getSourceHeight();
+        BandDataBuffer dataBuffer = new BandDataBuffer(accumulator, BAND_HEIGHT);
+        SampleModel sampleModel = new SinglePixelPackedSampleModel(
+                DataBuffer.TYPE_INT, width, height, RGB_MASKS);
+        WritableRaster raster =
+                Raster.createWritableRaster(sampleModel, dataBuffer, null);
+        ColorModel colorModel = new DirectColorModel(RGB_BITS,
+                RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]);
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setDestination(new BufferedImage(colorModel, raster, false, null));
+        reader.read(0, param);
+        dataBuffer.flush();
+    }
+
+    private static void readBands(ImageReader reader,
+                                  BrightnessGridAccumulator accumulator)
+            throws IOException {
+        int width = accumulator.getSourceWidth();
+        int height = accumulator.getSourceHeight();
+        int[] rgbRow = new int[width];
+        ImageReadParam param = reader.getDefaultReadParam();
+        for (int bandStart = 0; bandStart < height; bandStart += BAND_HEIGHT) {
+            int bandHeight = Math.min(BAND_HEIGHT, height - bandStart);
+            param.setSourceRegion(new Rectangle(0, bandStart, width, bandHeight));
+            BufferedImage band = reader.read(0, param);
+            for (int i = 0; i < bandHeight; i++) {
+                band.getRGB(0, i, width, 1, rgbRow, 0, width);
+                accumulator.addRow(bandStart + i, rgbRow);
+            }
+        }
+    }
+
+    /*
+     * An int data buffer over the whole image that only stores a band of rows.
+     * Once the reader writes past the band, the band is handed to the
+     * accumulator and reused for the next rows. Writing above the current
+     * band means the reader does not write in order, and is refused.
+     */
+    private static final class BandDataBuffer extends DataBuffer {
+        private final BrightnessGridAccumulator accumulator;
+        private final int width;
+        private final int bandHeight;
+        private final int[] band;
+        private final int[] rgbRow;
+        private int bandStartRow = 0;
+        private int bandRows = 0;
+
+        private BandDataBuffer(BrightnessGridAccumulator accumulator,
+                               int bandHeight) {
+            super(TYPE_INT, accumulator.getSourceWidth()
+                    * accumulator.getSourceHeight());
+            this.accumulator = accumulator;
+            this.width = accumulator.getSourceWidth();
+            this.bandHeight = bandHeight;
+            this.band = new int[width * bandHeight];
+            this.rgbRow = new int[width];
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            int bandIdx = i - bandStartRow * width;
+            return (bandIdx >= 0 && bandIdx < band.length) ? band[bandIdx] : 0;
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            int row = i / width;
+            if (row < bandStartRow) {
+                throw new IllegalStateException("Rows are not written in order.");
+            }
+            while (row >= bandStartRow + bandHeight) {
+                flush();
+                bandStartRow += bandHeight;
+            }
+            bandRows = Math.max(bandRows, row - bandStartRow + 1);
+            band[i - bandStartRow * width] = val;
+        }
+
+        // hands the written rows of the band to the accumulator.
+        private void flush() {
+            for (int r = 0; r < bandRows; r++) {
+                System.arraycopy(band, r * width, rgbRow, 0, width);
+                accumulator.addRow(bandStartRow + r, rgbRow);
+            }
+            Arrays.fill(band, 0);
+            bandRows = 0;
+        }
+    }
+}
@@ -14,7 +14,7 @@ import java.awt.image.BufferedImage;
 public class CharConverter {
     private static final double X_OFFSET_FACTOR = 0.2;
     private static final double Y_OFFSET_FACTOR = 0.75;
-    private static final String FONT_NAME = "Courier New";
+    static final String FONT_NAME = "Courier New";
     public static final int DEFAULT_PIXEL_RESOLUTION = 16;
 
     /**
@@ -33,6 +33,31 @@ public class CharConverter {
         return matrix;
     }
 
+    /**
+     * Renders a given character like {@link #convertToBoolArray(char)}, packed
+     * into bits instead of a 2D array of booleans.
+     */
+    public static PackedGlyph convertToPackedArray(char c) {
+        return convertToPackedArray(c, DEFAULT_PIXEL_RESOLUTION);
+    }
+
+    /**
+     * Renders a given character to a packed square image of the given
+     * dimension in pixels, a set bit meaning a background pixel.
+     */
+    public static PackedGlyph convertToPackedArray(char c, int pixelResolution) {
+        BufferedImage img = getBufferedImage(c, FONT_NAME, pixelResolution);
+        int[] pixels = img.getRGB(0, 0, pixelResolution, pixelResolution,
+                null, 0, pixelResolution);
+        long[] words = new long[PackedGlyph.wordCount(pixelResolution)];
+        for (int k = 0; k < pixels.length; k++) {
+            if (pixels[k] == 0) { //is the color black
+                words[k / Long.SIZE] |= 1L << (k % Long.SIZE);
+            }
+        }
+        return new PackedGlyph(pixelResolution, words);
+    }
+
     private static BufferedImage getBufferedImage(char c, String fontName, int pixelsPerRow) {
         String charStr = Character.toString(c);
         Font font = new Font(fontName, Font.PLAIN, pixelsPerRow);
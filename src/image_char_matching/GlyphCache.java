@@ -0,0 +1,135 @@
+package image_char_matching;
+
+import metrics.Counter;
+import metrics.PipelineMetrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of rendered glyph brightness, keyed by (font name, pixel resolution, char).
+ * The in-memory layer is shared by every SubImgCharMatcher in the JVM, and it can
+ * be saved to and preloaded from a file. When every requested char is cached,
+ * no glyph is rendered and the AWT font subsystem is never initialized.
+ */
+public class GlyphCache {
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final int FONT_NAME_FIELD = 0;
+    private static final int RESOLUTION_FIELD = 1;
+    private static final int CHAR_FIELD = 2;
+    private static final int COUNT_FIELD = 3;
+    private static final int FIELDS_IN_LINE = 4;
+
+    private static final Map<GlyphKey, Integer> brightPixelCounts =
+            new ConcurrentHashMap<>();
+
+    private GlyphCache() {
+    }
+
+    /**
+     * Returns the number of bright (non-ink) pixels of the given char, as
+     * rendered by {@link CharConverter#convertToPackedArray(char)}. The char is
+     * rendered only on the first request.
+     *
+     * @param c the char to look up
+     * @return the number of bright pixels in the char's square image
+     */
+    public static int getBrightPixelCount(char c) {
+        GlyphKey key = new GlyphKey(CharConverter.FONT_NAME,
+                CharConverter.DEFAULT_PIXEL_RESOLUTION, c);
+        Integer cached = brightPixelCounts.get(key);
+        if (cached != null) {
+            PipelineMetrics.increment(Counter.GLYPH_CACHE_HITS);
+            return cached;
+        }
+        PipelineMetrics.increment(Counter.GLYPH_CACHE_MISSES);
+        return brightPixelCounts.computeIfAbsent(key,
+                k -> CharConverter.convertToPackedArray(c).getBrightPixelCount());
+    }
+
+    /**
+     * Loads cached glyphs from the given file, as written by {@link #save(Path)}.
+     * Entries already in memory are overwritten.
+     *
+     * @param file the file to load
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static void load(Path file) throws IOException {
+        try (BufferedReader reader =
+                     Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(FIELD_SEPARATOR);
+                if (fields.length != FIELDS_IN_LINE) {
+                    throw new IOException("Malformed glyph cache line: " + line);
+                }
+                try {
+                    GlyphKey key = new GlyphKey(fields[FONT_NAME_FIELD],
+                            Integer.parseInt(fields[RESOLUTION_FIELD]),
+                            (char) Integer.parseInt(fields[CHAR_FIELD]));
+                    brightPixelCounts.put(key,
+                            Integer.parseInt(fields[COUNT_FIELD]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed glyph cache line: " + line, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves every cached glyph to the given file, one glyph per line.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(Path file) throws IOException {
+        try (BufferedWriter writer =
+                     Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<GlyphKey, Integer> entry : brightPixelCounts.entrySet()) {
+                GlyphKey key = entry.getKey();
+                writer.write(key.fontName + FIELD_SEPARATOR
+                        + key.resolution + FIELD_SEPARATOR
+                        + (int) key.c + FIELD_SEPARATOR
+                        + entry.getValue());
+                writer.newLine();
+            }
+        }
+    }
+
+    private static final class GlyphKey {
+        private final String fontName;
+        private final int resolution;
+        private final char c;
+
+        private GlyphKey(String fontName, int resolution, char c) {
+            this.fontName = fontName;
+            this.resolution = resolution;
+            this.c = c;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GlyphKey)) {
+                return false;
+            }
+            GlyphKey other = (GlyphKey) o;
+            return resolution == other.resolution && c == other.c
+                    && fontName.equals(other.fontName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fontName, resolution, c);
+        }
+    }
+}
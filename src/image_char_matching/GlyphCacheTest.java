@@ -0,0 +1,78 @@
+package image_char_matching;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GlyphCacheTest {
+
+    // chars no other test renders, as the cache is shared by the whole JVM.
+    private static final char LOADED_CHAR = '\u2603';
+    private static final char OTHER_KEY_CHAR = '\u2604';
+    private static final int MAX_COUNT = CharConverter.DEFAULT_PIXEL_RESOLUTION
+            * CharConverter.DEFAULT_PIXEL_RESOLUTION;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSaveAndLoadRoundTrip() throws IOException {
+        int count = GlyphCache.getBrightPixelCount('a');
+        Path file = directory.resolve("glyphs.tsv");
+        GlyphCache.save(file);
+
+        // one line per glyph: font, resolution, char code and count.
+        String line = CharConverter.FONT_NAME + "\t"
+                + CharConverter.DEFAULT_PIXEL_RESOLUTION + "\t" + (int) 'a'
+                + "\t" + count;
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertTrue(lines.contains(line), lines.toString());
+
+        // a loaded count is served instead of rendering the char.
+        Files.writeString(file, "\n" + CharConverter.FONT_NAME + "\t"
+                + CharConverter.DEFAULT_PIXEL_RESOLUTION + "\t"
+                + (int) LOADED_CHAR + "\t" + (MAX_COUNT + 1) + "\n");
+        GlyphCache.load(file);
+        assertEquals(MAX_COUNT + 1, GlyphCache.getBrightPixelCount(LOADED_CHAR));
+
+        Path saved = directory.resolve("saved.tsv");
+        GlyphCache.save(saved);
+        assertTrue(Files.readAllLines(saved, StandardCharsets.UTF_8).contains(
+                line));
+    }
+
+    @Test
+    void testEntriesOfOtherFontsAndResolutionsAreNotServed() throws IOException {
+        Path file = directory.resolve("glyphs.tsv");
+        Files.writeString(file, "Other Font\t"
+                + CharConverter.DEFAULT_PIXEL_RESOLUTION + "\t"
+                + (int) OTHER_KEY_CHAR + "\t" + (MAX_COUNT + 1) + "\n"
+                + CharConverter.FONT_NAME + "\t"
+                + (CharConverter.DEFAULT_PIXEL_RESOLUTION * 2) + "\t"
+                + (int) OTHER_KEY_CHAR + "\t" + (MAX_COUNT + 2) + "\n");
+        GlyphCache.load(file);
+
+        // the char is rendered, as no entry has the matcher's key.
+        assertTrue(GlyphCache.getBrightPixelCount(OTHER_KEY_CHAR) <= MAX_COUNT);
+    }
+
+    @Test
+    void testMalformedLinesAreRejected() throws IOException {
+        Path file = directory.resolve("glyphs.tsv");
+        for (String line : new String[]{"Courier New\t16\t97",
+                "Courier New\t16\t97\t10\t1", "Courier New\tsixteen\t97\t10",
+                "Courier New\t16\t97\tten"}) {
+            Files.writeString(file, line + "\n");
+            IOException e = assertThrows(IOException.class,
+                    () -> GlyphCache.load(file));
+            assertTrue(e.getMessage().contains(line));
+        }
+    }
+}
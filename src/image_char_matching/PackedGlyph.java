@@ -0,0 +1,166 @@
+package image_char_matching;
+
+import java.util.Arrays;
+
+/**
+ * A square black&amp;white glyph image packed into bits, one long per 64
+ * pixels. Pixel (row, col) is bit (row * resolution + col) % 64 of word
+ * (row * resolution + col) / 64, and is set when the pixel is bright (not
+ * ink), like a true value of {@link CharConverter#convertToBoolArray(char)}.
+ * A 16x16 glyph takes four longs, and counting or comparing pixels is a
+ * popcount per word. Instances are immutable.
+ */
+public final class PackedGlyph {
+    private final int resolution;
+    private final long[] words;
+
+    /*
+     * Wraps the given words, which must hold resolution * resolution bits
+     * with every bit past the last pixel clear.
+     */
+    PackedGlyph(int resolution, long[] words) {
+        this.resolution = resolution;
+        this.words = words;
+    }
+
+    /**
+     * Packs a square boolean image, true meaning bright.
+     *
+     * @param pixels the image, indexed by row and column
+     * @return the packed glyph
+     */
+    public static PackedGlyph fromBoolArray(boolean[][] pixels) {
+        int resolution = pixels.length;
+        long[] words = new long[wordCount(resolution)];
+        for (int row = 0; row < resolution; row++) {
+            for (int col = 0; col < resolution; col++) {
+                if (pixels[row][col]) {
+                    int k = row * resolution + col;
+                    words[k / Long.SIZE] |= 1L << (k % Long.SIZE);
+                }
+            }
+        }
+        return new PackedGlyph(resolution, words);
+    }
+
+    /**
+     * Returns the width and height of the glyph in pixels.
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Returns whether the pixel at the given row and column is bright.
+     */
+    public boolean isBright(int row, int col) {
+        int k = row * resolution + col;
+        return (words[k / Long.SIZE] & (1L << (k % Long.SIZE))) != 0;
+    }
+
+    /**
+     * Returns the number of bright pixels of the glyph.
+     */
+    public int getBrightPixelCount() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of pixels that differ between this glyph and another
+     * one of the same resolution.
+     */
+    public int hammingDistance(PackedGlyph other) {
+        checkResolution(other);
+        int distance = 0;
+        for (int w = 0; w < words.length; w++) {
+            distance += Long.bitCount(words[w] ^ other.words[w]);
+        }
+        return distance;
+    }
+
+    /**
+     * Returns the number of pixels that are bright in both this glyph and
+     * another one of the same resolution.
+     */
+    public int brightOverlap(PackedGlyph other) {
+        checkResolution(other);
+        int overlap = 0;
+        for (int w = 0; w < words.length; w++) {
+            overlap += Long.bitCount(words[w] & other.words[w]);
+        }
+        return overlap;
+    }
+
+    /**
+     * Scales the glyph down to the given resolution. A pixel of the result is
+     * bright when at least half of the pixels it covers are.
+     *
+     * @param newResolution the resolution of the result, at most this one's
+     * @return the scaled glyph
+     */
+    public PackedGlyph downsample(int newResolution) {
+        if (newResolution < 1 || newResolution > resolution) {
+            throw new IllegalArgumentException("Cannot downsample to " + newResolution);
+        }
+        if (newResolution == resolution) {
+            return this;
+        }
+        int[] brightPixels = new int[newResolution * newResolution];
+        int[] pixels = new int[newResolution * newResolution];
+        for (int row = 0; row < resolution; row++) {
+            for (int col = 0; col < resolution; col++) {
+                int cell = row * newResolution / resolution * newResolution
+                        + col * newResolution / resolution;
+                pixels[cell]++;
+                if (isBright(row, col)) {
+                    brightPixels[cell]++;
+                }
+            }
+        }
+        long[] newWords = new long[wordCount(newResolution)];
+        for (int k = 0; k < pixels.length; k++) {
+            if (brightPixels[k] * 2 >= pixels[k]) {
+                newWords[k / Long.SIZE] |= 1L << (k % Long.SIZE);
+            }
+        }
+        return new PackedGlyph(newResolution, newWords);
+    }
+
+    /**
+     * Copies the packed words into dst, starting at dstOffset.
+     */
+    public void copyWords(long[] dst, int dstOffset) {
+        System.arraycopy(words, 0, dst, dstOffset, words.length);
+    }
+
+    /**
+     * Returns the number of longs needed for a glyph of the given resolution.
+     */
+    public static int wordCount(int resolution) {
+        return (resolution * resolution + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PackedGlyph)) {
+            return false;
+        }
+        PackedGlyph other = (PackedGlyph) o;
+        return resolution == other.resolution && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * resolution + Arrays.hashCode(words);
+    }
+
+    private void checkResolution(PackedGlyph other) {
+        if (other.resolution != resolution) {
+            throw new IllegalArgumentException("Glyph resolutions differ.");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package image_char_matching;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedGlyphTest {
+
+    @Test
+    void testPackedArrayMatchesBoolArray() {
+        for (char c : "@#a|/ ".toCharArray()) {
+            boolean[][] pixels = CharConverter.convertToBoolArray(c);
+            PackedGlyph glyph = CharConverter.convertToPackedArray(c);
+            int brightPixels = 0;
+            for (int row = 0; row < pixels.length; row++) {
+                for (int col = 0; col < pixels.length; col++) {
+                    assertEquals(pixels[row][col], glyph.isBright(row, col));
+                    brightPixels += pixels[row][col] ? 1 : 0;
+                }
+            }
+            assertEquals(brightPixels, glyph.getBrightPixelCount());
+            assertEquals(glyph, PackedGlyph.fromBoolArray(pixels));
+        }
+    }
+
+    @Test
+    void testHammingDistance() {
+        PackedGlyph bar = CharConverter.convertToPackedArray('|');
+        PackedGlyph dash = CharConverter.convertToPackedArray('-');
+        PackedGlyph blank = CharConverter.convertToPackedArray(' ');
+
+        assertEquals(0, bar.hammingDistance(bar));
+        assertEquals(bar.getBrightPixelCount(), bar.brightOverlap(blank));
+        assertEquals(blank.getBrightPixelCount() - bar.getBrightPixelCount(),
+                bar.hammingDistance(blank));
+        assertEquals(bar.hammingDistance(dash), dash.hammingDistance(bar));
+    }
+}
@@ -0,0 +1,234 @@
+package image_char_matching;
+
+import metrics.Counter;
+import metrics.PipelineMetrics;
+
+import java.util.Arrays;
+
+/**
+ * The ShapeCharMatcher class matches characters to the shape of a sub-image
+ * rather than to its brightness alone, so that edges are drawn with chars
+ * like '/', '\', '|' and '-' that follow them.
+ * <p>
+ * Each glyph is kept as a bitmap of its bright pixels, packed into longs and
+ * centred horizontally on its ink. A sub-image, downsampled to side x side
+ * cells, is thresholded at its mean into a bitmap of the same kind. The
+ * distance between the two is the Hamming distance of the bitmaps, for the
+ * shape, plus a weighted difference between the glyph's bright pixel count
+ * and the count a glyph of the sub-image's brightness would have, for the tone.
+ * Sub-images smaller than the glyphs are compared with glyphs downsampled to
+ * their size, built on first use.
+ * <p>
+ * The glyphs are sorted by their number of bright pixels. The Hamming
+ * distance is at least the difference of the bright counts, which bounds the
+ * whole distance from below, so the search starts at the glyphs whose count
+ * lies between the sub-image's and the target one and stops on each side as
+ * soon as no further glyph can be closer. Sub-images with too little contrast
+ * to have a shape are matched by brightness instead. An instance reuses its
+ * buffers and is not thread-safe.
+ */
+public class ShapeCharMatcher {
+    /** The largest width and height, in cells, of the sub-images to match. */
+    public static final int SHAPE_RESOLUTION = CharConverter.DEFAULT_PIXEL_RESOLUTION;
+    private static final int WORDS = PackedGlyph.wordCount(SHAPE_RESOLUTION);
+    // greyscale range under which a sub-image is matched by brightness.
+    private static final int MIN_CONTRAST = 64;
+    // weight of a pixel of tone difference against a pixel of shape
+    // difference; above one, a blank glyph of the wrong tone cannot beat a
+    // stroke that is only slightly out of place.
+    private static final int TONE_WEIGHT = 2;
+
+    private final SubImgCharMatcher brightnessMatcher;
+    private final char[] charset;
+    // each char of charset at full resolution, centred on its ink.
+    private final PackedGlyph[] glyphImages;
+    // the glyphs downsampled to each side, indexed by side.
+    private final GlyphSet[] glyphSets = new GlyphSet[SHAPE_RESOLUTION + 1];
+    // the bits of the sub-image being matched.
+    private final long[] tileBits = new long[WORDS];
+
+    /**
+     * Constructs a ShapeCharMatcher with the given character set.
+     *
+     * @param charset the array of characters to be used for matching
+     */
+    public ShapeCharMatcher(char[] charset) {
+        this.brightnessMatcher = new SubImgCharMatcher(charset);
+        this.charset = charset.clone();
+        Arrays.sort(this.charset);
+        this.glyphImages = new PackedGlyph[this.charset.length];
+        for (int k = 0; k < this.charset.length; k++) {
+            glyphImages[k] = centerInk(CharConverter.convertToPackedArray(this.charset[k]));
+        }
+        glyphSets[SHAPE_RESOLUTION] = new GlyphSet(SHAPE_RESOLUTION);
+    }
+
+    /**
+     * Finds the character whose glyph best matches the shape of a sub-image.
+     * Ties go to the smallest char.
+     *
+     * @param greyscale  the sub-image downsampled to side x side greyscale
+     *                   values in [0, 255], row-major
+     * @param side       the number of cells in a row of greyscale, at most
+     *                   SHAPE_RESOLUTION
+     * @param brightness the brightness of the whole sub-image, for the tone,
+     *                   and alone when the sub-image is too flat to have a shape
+     * @return the character that best matches the sub-image
+     */
+    public char getCharByShape(int[] greyscale, int side, double brightness) {
+        if (side < 1 || side > SHAPE_RESOLUTION) {
+            throw new IllegalArgumentException("Unsupported shape resolution.");
+        }
+        int cells = side * side;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int sum = 0;
+        for (int k = 0; k < cells; k++) {
+            min = Math.min(min, greyscale[k]);
+            max = Math.max(max, greyscale[k]);
+            sum += greyscale[k];
+        }
+        if (max - min < MIN_CONTRAST) {
+            return brightnessMatcher.getCharByImageBrightness(brightness);
+        }
+        PipelineMetrics.increment(Counter.SHAPE_MATCHES);
+
+        GlyphSet glyphs = glyphSets[side];
+        if (glyphs == null) {
+            glyphs = new GlyphSet(side);
+            glyphSets[side] = glyphs;
+        }
+        // a cell is bright when it is at least as bright as the mean.
+        Arrays.fill(tileBits, 0);
+        int tileCount = 0;
+        for (int k = 0; k < cells; k++) {
+            if (greyscale[k] * cells >= sum) {
+                tileBits[k / Long.SIZE] |= 1L << (k % Long.SIZE);
+                tileCount++;
+            }
+        }
+        // glyph brightness is normalized like in SubImgCharMatcher, so the
+        // target count is interpolated between the extreme glyphs.
+        int minCount = glyphs.brightCounts[0];
+        int maxCount = glyphs.brightCounts[glyphs.brightCounts.length - 1];
+        double clamped = Math.max(0, Math.min(1, brightness));
+        int targetCount = (int) Math.round(minCount + clamped * (maxCount - minCount));
+        return glyphs.findNearest(tileBits, tileCount, targetCount);
+    }
+
+    /*
+     * The glyphs of the charset at one resolution, sorted by bright pixel
+     * count and then by char, with WORDS longs of bits per glyph.
+     */
+    private final class GlyphSet {
+        private final char[] chars;
+        private final int[] brightCounts;
+        private final long[] bits;
+        // the state of the running search.
+        private int best;
+        private char bestChar;
+
+        GlyphSet(int side) {
+            PackedGlyph[] glyphsByChar = new PackedGlyph[charset.length];
+            int[] countsByChar = new int[charset.length];
+            Integer[] order = new Integer[charset.length];
+            for (int k = 0; k < charset.length; k++) {
+                glyphsByChar[k] = glyphImages[k].downsample(side);
+                countsByChar[k] = glyphsByChar[k].getBrightPixelCount();
+                order[k] = k;
+            }
+            // a stable sort keeps equal counts ordered by char.
+            Arrays.sort(order, (a, b) -> Integer.compare(countsByChar[a],
+                    countsByChar[b]));
+
+            chars = new char[charset.length];
+            brightCounts = new int[charset.length];
+            bits = new long[charset.length * WORDS];
+            for (int k = 0; k < order.length; k++) {
+                chars[k] = charset[order[k]];
+                brightCounts[k] = countsByChar[order[k]];
+                glyphsByChar[order[k]].copyWords(bits, k * WORDS);
+            }
+        }
+
+        /*
+         * Finds the glyph of the smallest distance, by scanning up and then
+         * down from the first glyph whose count is at least the lower of the
+         * tile's and the target count. The lower bound is convex in the
+         * count, and can only grow once a scan has passed its minimum, so
+         * each scan stops as soon as the bound exceeds the best distance.
+         */
+        char findNearest(long[] tile, int tileCount, int targetCount) {
+            int start = lowerBound(Math.min(tileCount, targetCount));
+            best = Integer.MAX_VALUE;
+            bestChar = Character.MAX_VALUE;
+            for (int k = start; k < chars.length
+                    && lowerBoundOf(k, tileCount, targetCount) <= best; k++) {
+                consider(k, tile, targetCount);
+            }
+            for (int k = start - 1; k >= 0
+                    && lowerBoundOf(k, tileCount, targetCount) <= best; k--) {
+                consider(k, tile, targetCount);
+            }
+            return bestChar;
+        }
+
+        private int lowerBoundOf(int glyph, int tileCount, int targetCount) {
+            return Math.abs(brightCounts[glyph] - tileCount)
+                    + TONE_WEIGHT * Math.abs(brightCounts[glyph] - targetCount);
+        }
+
+        // keeps the glyph if it is closer than the best, or as close and smaller.
+        private void consider(int glyph, long[] tile, int targetCount) {
+            int distance = TONE_WEIGHT * Math.abs(brightCounts[glyph] - targetCount);
+            for (int w = 0; w < WORDS; w++) {
+                distance += Long.bitCount(tile[w] ^ bits[glyph * WORDS + w]);
+            }
+            if (distance < best || (distance == best && chars[glyph] < bestChar)) {
+                best = distance;
+                bestChar = chars[glyph];
+            }
+        }
+
+        // the index of the first glyph with at least the given bright count.
+        private int lowerBound(int count) {
+            int low = 0;
+            int high = chars.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (brightCounts[middle] < count) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    // shifts a glyph sideways so that its ink is centred in the square.
+    private static PackedGlyph centerInk(PackedGlyph glyph) {
+        int left = SHAPE_RESOLUTION;
+        int right = -1;
+        for (int y = 0; y < SHAPE_RESOLUTION; y++) {
+            for (int x = 0; x < SHAPE_RESOLUTION; x++) {
+                if (!glyph.isBright(y, x)) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                }
+            }
+        }
+        if (right < 0) {
+            return glyph;
+        }
+        int shift = (SHAPE_RESOLUTION - 1 - left - right) / 2;
+        boolean[][] centered = new boolean[SHAPE_RESOLUTION][SHAPE_RESOLUTION];
+        for (int y = 0; y < SHAPE_RESOLUTION; y++) {
+            Arrays.fill(centered[y], true);
+            for (int x = left; x <= right; x++) {
+                centered[y][x + shift] = glyph.isBright(y, x);
+            }
+        }
+        return PackedGlyph.fromBoolArray(centered);
+    }
+}
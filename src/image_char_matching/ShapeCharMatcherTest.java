@@ -0,0 +1,48 @@
+package image_char_matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShapeCharMatcherTest {
+
+    private static final int SIDE = ShapeCharMatcher.SHAPE_RESOLUTION;
+
+    @Test
+    void testMatchesLineDirection() {
+        ShapeCharMatcher matcher = new ShapeCharMatcher("|-/\\".toCharArray());
+
+        assertEquals('|', matcher.getCharByShape(drawLine(1, 0), SIDE, 0.5));
+        assertEquals('-', matcher.getCharByShape(drawLine(0, 1), SIDE, 0.5));
+    }
+
+    @Test
+    void testMatchesFlatTileByBrightness() {
+        char[] charset = "|-/\\".toCharArray();
+        ShapeCharMatcher matcher = new ShapeCharMatcher(charset);
+        SubImgCharMatcher brightnessMatcher = new SubImgCharMatcher(charset);
+        int[] flat = new int[SIDE * SIDE];
+        Arrays.fill(flat, 200);
+
+        for (double brightness : new double[]{0, 0.3, 0.7, 1}) {
+            assertEquals(brightnessMatcher.getCharByImageBrightness(brightness),
+                    matcher.getCharByShape(flat, SIDE, brightness));
+        }
+    }
+
+    // a white tile with a dark line through its centre, along (dRow, dCol).
+    private static int[] drawLine(int dRow, int dCol) {
+        int[] greyscale = new int[SIDE * SIDE];
+        Arrays.fill(greyscale, 255);
+        for (int t = 0; t < SIDE; t++) {
+            for (int w = -1; w <= 0; w++) {
+                int row = (dRow == 0) ? SIDE / 2 + w : t;
+                int col = (dCol == 0) ? SIDE / 2 + w : t;
+                greyscale[row * SIDE + col] = 0;
+            }
+        }
+        return greyscale;
+    }
+}
@@ -1,5 +1,8 @@
 package image_char_matching;
 
+import metrics.Counter;
+import metrics.PipelineMetrics;
+
 import java.util.*;
 
 /**
@@ -8,7 +11,14 @@ import java.util.*;
  * the closest matching character for a given brightness level.
  */
 public class SubImgCharMatcher {
-    private static final int TOTAL_PIXELS = 16 * 16;
+    private static final int TOTAL_PIXELS = CharConverter.DEFAULT_PIXEL_RESOLUTION
+            * CharConverter.DEFAULT_PIXEL_RESOLUTION;
+    // number of buckets of the brightness lookup table over [0,1]. A power
+    // of two, so that brightness * LOOKUP_TABLE_SIZE is computed exactly.
+    static final int LOOKUP_TABLE_SIZE = 1 << 12;
+    private static final int NO_CHAR = -1;
+    // number of charset changes remembered for getChangedBrightnessRange.
+    private static final int CHANGE_HISTORY_SIZE = 16;
 
     // Maps normalized brightness to a set of characters.
     // The characters in the set are sorted by their ASCII values.
@@ -17,6 +27,17 @@ public class SubImgCharMatcher {
     // Maps characters to their raw brightness values (before normalization).
     private final HashMap<Character, Double> rawCharBrightnessMap;
 
+    // Maps a brightness bucket to the char matched by every brightness in it,
+    // or NO_CHAR if the bucket straddles a boundary between two chars.
+    private final int[] brightnessLookupTable;
+
+    // Charset version, incremented by every addChar/removeChar that changes the charset.
+    private long version = 0;
+    // The range of brightness levels whose match may have changed by each of
+    // the last changes, indexed by version % CHANGE_HISTORY_SIZE.
+    private final double[] changeLowBounds = new double[CHANGE_HISTORY_SIZE];
+    private final double[] changeHighBounds = new double[CHANGE_HISTORY_SIZE];
+
     /**
      * Constructs a SubImgCharMatcher with the given character set.
      * Initializes the brightness mappings for the characters.
@@ -26,6 +47,7 @@ public class SubImgCharMatcher {
     public SubImgCharMatcher(char[] charset) {
         this.normalizedBrightnessMap = new TreeMap<>();
         this.rawCharBrightnessMap = new HashMap<>();
+        this.brightnessLookupTable = new int[LOOKUP_TABLE_SIZE + 1];
         for (char c : charset) {
             rawCharBrightnessMap.put(c, calculateCharBrightness(c));
         }
@@ -34,12 +56,31 @@ public class SubImgCharMatcher {
 
     /**
      * Finds the character that best matches the given brightness level.
-     * The closest brightness value is determined using the TreeMap.
+     * Brightness levels in [0,1] are answered from the precomputed lookup
+     * table; the rest, and the few buckets on a boundary, use the TreeMap.
      *
      * @param brightness the brightness level to match
      * @return the character that best matches the given brightness level
      */
     public char getCharByImageBrightness(double brightness) {
+        if (brightness >= 0 && brightness <= 1) {
+            int tableEntry = brightnessLookupTable[
+                    (int) (brightness * LOOKUP_TABLE_SIZE)];
+            if (tableEntry != NO_CHAR) {
+                PipelineMetrics.increment(Counter.MATCHER_TABLE_HITS);
+                return (char) tableEntry;
+            }
+        }
+        PipelineMetrics.increment(Counter.MATCHER_TABLE_MISSES);
+        return findClosestChar(brightness);
+    }
+
+    /*
+     * Finds the character that best matches the given brightness level.
+     * The closest brightness value is determined using the TreeMap. Package
+     * visible for the tests, which check the lookup table against it.
+     */
+    char findClosestChar(double brightness) {
         // Find the closest normalized brightness value using TreeMap.
         Map.Entry<Double, TreeSet<Character>> floorEntry = normalizedBrightnessMap.floorEntry(brightness);
         Map.Entry<Double, TreeSet<Character>> ceilingEntry = normalizedBrightnessMap.ceilingEntry(brightness);
@@ -59,6 +100,22 @@ public class SubImgCharMatcher {
         }
     }
 
+    /**
+     * Returns the distinct normalized brightness levels of the charset, in
+     * ascending order. Every char matches the brightness of its own level,
+     * so these are the only values a matched tile can be rendered as.
+     *
+     * @return a new array of the levels
+     */
+    public double[] getBrightnessLevels() {
+        double[] levels = new double[normalizedBrightnessMap.size()];
+        int k = 0;
+        for (double level : normalizedBrightnessMap.keySet()) {
+            levels[k++] = level;
+        }
+        return levels;
+    }
+
     /**
      * Adds a character to the matcher and updates the brightness mappings.
      *
@@ -67,43 +124,126 @@ public class SubImgCharMatcher {
     public void addChar(char c) {
         if (!rawCharBrightnessMap.containsKey(c)) {
             double brightness = calculateCharBrightness(c);
+            double oldMinBrightness = Collections.min(rawCharBrightnessMap.values());
+            double oldMaxBrightness = Collections.max(rawCharBrightnessMap.values());
             rawCharBrightnessMap.put(c, brightness);
             normalizeBrightness();
+            recordChange(brightness, oldMinBrightness, oldMaxBrightness);
         }
     }
 
     /**
      * Removes a character from the matcher and updates the brightness mappings.
+     * The last character cannot be removed, as an empty charset matches nothing.
      *
      * @param c the character to remove
+     * @throws IllegalStateException if c is the only character of the matcher
      */
     public void removeChar(char c) {
         if (rawCharBrightnessMap.containsKey(c)) {
-            rawCharBrightnessMap.remove(c);
+            if (rawCharBrightnessMap.size() == 1) {
+                throw new IllegalStateException(
+                        "Cannot remove the last character of the charset.");
+            }
+            double oldMinBrightness = Collections.min(rawCharBrightnessMap.values());
+            double oldMaxBrightness = Collections.max(rawCharBrightnessMap.values());
+            double brightness = rawCharBrightnessMap.remove(c);
             normalizeBrightness();
+            recordChange(brightness, oldMinBrightness, oldMaxBrightness);
         }
     }
 
+    /**
+     * Returns whether the given character is in the charset.
+     */
+    public boolean containsChar(char c) {
+        return rawCharBrightnessMap.containsKey(c);
+    }
+
+    /**
+     * Returns the number of characters in the charset.
+     */
+    public int getCharCount() {
+        return rawCharBrightnessMap.size();
+    }
+
+    /**
+     * Returns the version of the charset, which changes with every
+     * addChar/removeChar that adds or removes a character.
+     *
+     * @return the current charset version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the range of brightness levels whose matching character may
+     * have changed since the given version. Brightness levels outside of the
+     * range are guaranteed to match the same character as they did then.
+     *
+     * @param sinceVersion a version previously returned by {@link #getVersion()}
+     * @return {low, high}, inclusive; empty (low &gt; high) if nothing changed,
+     * and infinite if every level may have changed
+     */
+    public double[] getChangedBrightnessRange(long sinceVersion) {
+        if (sinceVersion > version || sinceVersion < 0) {
+            throw new IllegalArgumentException("Unknown charset version.");
+        }
+        if (version - sinceVersion > CHANGE_HISTORY_SIZE) {
+            return new double[]{Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+        }
+        double low = Double.POSITIVE_INFINITY;
+        double high = Double.NEGATIVE_INFINITY;
+        for (long v = sinceVersion + 1; v <= version; v++) {
+            int historyIdx = (int) (v % CHANGE_HISTORY_SIZE);
+            low = Math.min(low, changeLowBounds[historyIdx]);
+            high = Math.max(high, changeHighBounds[historyIdx]);
+        }
+        return new double[]{low, high};
+    }
+
+    /*
+     * Records a change of the charset: a char of the given raw brightness was
+     * added or removed. If the normalization range stayed the same, every other
+     * normalized level stayed the same too, and only brightness levels between
+     * the two levels around the char's own level can match differently.
+     * Otherwise every level moved, and so may every match.
+     */
+    private void recordChange(double rawBrightness, double oldMinBrightness,
+                              double oldMaxBrightness) {
+        double minBrightness = Collections.min(rawCharBrightnessMap.values());
+        double maxBrightness = Collections.max(rawCharBrightnessMap.values());
+        double low = Double.NEGATIVE_INFINITY;
+        double high = Double.POSITIVE_INFINITY;
+        if (minBrightness == oldMinBrightness && maxBrightness == oldMaxBrightness
+                && minBrightness != maxBrightness) {
+            double level = (rawBrightness - minBrightness) / (maxBrightness - minBrightness);
+            Double lowerLevel = normalizedBrightnessMap.lowerKey(level);
+            Double higherLevel = normalizedBrightnessMap.higherKey(level);
+            if (lowerLevel != null) {
+                low = lowerLevel;
+            }
+            if (higherLevel != null) {
+                high = higherLevel;
+            }
+        }
+        version++;
+        int historyIdx = (int) (version % CHANGE_HISTORY_SIZE);
+        changeLowBounds[historyIdx] = low;
+        changeHighBounds[historyIdx] = high;
+    }
+
     /*
      * Calculates the brightness of a given character.
      * The brightness is determined by the proportion of black pixels in the character's image.
+     * Rendered glyphs are shared through the GlyphCache.
      *
      * @param c the character to calculate the brightness for
      * @return the brightness value of the character
      */
     private double calculateCharBrightness(char c) {
-        boolean[][] charArray = CharConverter.convertToBoolArray(c);
-        int trueCount = 0;
-
-        for (boolean[] row : charArray) {
-            for (boolean pixel : row) {
-                if (pixel) {
-                    trueCount++;
-                }
-            }
-        }
-
-        return (double) trueCount / TOTAL_PIXELS;
+        return (double) GlyphCache.getBrightPixelCount(c) / TOTAL_PIXELS;
     }
 
     /*
@@ -127,5 +267,22 @@ public class SubImgCharMatcher {
             // Add the character to the tree such that it will automatically be ordered by ASCII values.
             brightnessTree.add(entry.getKey());
         }
+        buildLookupTable();
+    }
+
+    /*
+     * Compiles the normalized brightness map into the lookup table. The
+     * matched char only moves towards brighter chars as the brightness grows,
+     * so a bucket whose two ends match the same char matches it throughout.
+     */
+    private void buildLookupTable() {
+        char bucketStartChar = findClosestChar(0);
+        for (int i = 0; i <= LOOKUP_TABLE_SIZE; i++) {
+            char bucketEndChar =
+                    findClosestChar((double) (i + 1) / LOOKUP_TABLE_SIZE);
+            brightnessLookupTable[i] =
+                    (bucketStartChar == bucketEndChar) ? bucketStartChar : NO_CHAR;
+            bucketStartChar = bucketEndChar;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+package image_char_matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubImgCharMatcherTest {
+
+    // brightness levels probed around every change, including some outside [0,1].
+    private static final int PROBES = 2000;
+
+    @Test
+    void testChangedRangeCoversEveryChangedMatch() {
+        Random random = new Random(42);
+        SubImgCharMatcher matcher = new SubImgCharMatcher("ab".toCharArray());
+        char[] before = matchAll(matcher);
+        for (int step = 0; step < 300; step++) {
+            char c = (char) (' ' + random.nextInt('~' - ' ' + 1));
+            long version = matcher.getVersion();
+            if (random.nextBoolean()) {
+                matcher.addChar(c);
+            } else if (matcher.getCharCount() > 1) {
+                matcher.removeChar(c);
+            }
+            char[] after = matchAll(matcher);
+            double[] range = matcher.getChangedBrightnessRange(version);
+            if (matcher.getVersion() == version) {
+                assertTrue(range[0] > range[1], "unchanged charset, empty range");
+            }
+            for (int k = 0; k < PROBES; k++) {
+                double brightness = probe(k);
+                if (brightness < range[0] || brightness > range[1]) {
+                    assertEquals(before[k], after[k], "step " + step
+                            + ", brightness " + brightness);
+                }
+            }
+            before = after;
+        }
+    }
+
+    @Test
+    void testChangedRangeSpansSeveralVersions() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(" .:-=+*#%@".toCharArray());
+        long version = matcher.getVersion();
+        char[] before = matchAll(matcher);
+        matcher.removeChar('+');
+        matcher.addChar('o');
+        matcher.removeChar('-');
+        assertEquals(version + 3, matcher.getVersion());
+        double[] range = matcher.getChangedBrightnessRange(version);
+        char[] after = matchAll(matcher);
+        for (int k = 0; k < PROBES; k++) {
+            double brightness = probe(k);
+            if (brightness < range[0] || brightness > range[1]) {
+                assertEquals(before[k], after[k]);
+            }
+        }
+        // extremes stay, so the range is bounded.
+        assertTrue(range[0] > 0 && range[1] < 1);
+
+        double[] none = matcher.getChangedBrightnessRange(matcher.getVersion());
+        assertTrue(none[0] > none[1]);
+    }
+
+    @Test
+    void testChangedRangeIsInfiniteBeyondHistory() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(" @".toCharArray());
+        long version = matcher.getVersion();
+        for (char c = 'a'; c <= 'z'; c++) {
+            matcher.addChar(c);
+        }
+        double[] range = matcher.getChangedBrightnessRange(version);
+        assertEquals(Double.NEGATIVE_INFINITY, range[0]);
+        assertEquals(Double.POSITIVE_INFINITY, range[1]);
+        assertThrows(IllegalArgumentException.class,
+                () -> matcher.getChangedBrightnessRange(matcher.getVersion() + 1));
+    }
+
+    @Test
+    void testLastCharCannotBeRemoved() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher("ab".toCharArray());
+        matcher.removeChar('a');
+        assertEquals(1, matcher.getCharCount());
+        assertThrows(IllegalStateException.class, () -> matcher.removeChar('b'));
+        assertTrue(matcher.containsChar('b'));
+        assertEquals('b', matcher.getCharByImageBrightness(0.5));
+        // removing a char that is not there is still a no-op.
+        matcher.removeChar('z');
+        assertEquals(1, matcher.getCharCount());
+    }
+
+    @Test
+    void testLookupTableMatchesTreeMap() {
+        Random random = new Random(7);
+        for (int charset = 0; charset < 40; charset++) {
+            StringBuilder chars = new StringBuilder();
+            int size = 2 + random.nextInt(30);
+            for (int k = 0; k < size; k++) {
+                chars.append((char) (' ' + random.nextInt('~' - ' ' + 1)));
+            }
+            SubImgCharMatcher matcher = new SubImgCharMatcher(chars.toString().toCharArray());
+
+            // every bucket edge, just below and above it, and random values.
+            int buckets = SubImgCharMatcher.LOOKUP_TABLE_SIZE;
+            for (int bucket = 0; bucket <= buckets; bucket++) {
+                double edge = (double) bucket / buckets;
+                assertMatchesTreeMap(matcher, edge);
+                assertMatchesTreeMap(matcher, Math.nextDown(edge));
+                assertMatchesTreeMap(matcher, Math.nextUp(edge));
+                assertMatchesTreeMap(matcher, random.nextDouble());
+            }
+            // the levels themselves, and the ties half way between them.
+            double[] levels = matcher.getBrightnessLevels();
+            for (int k = 0; k < levels.length; k++) {
+                assertMatchesTreeMap(matcher, levels[k]);
+                if (k > 0) {
+                    double middle = (levels[k - 1] + levels[k]) / 2;
+                    assertMatchesTreeMap(matcher, middle);
+                    assertMatchesTreeMap(matcher, Math.nextDown(middle));
+                    assertMatchesTreeMap(matcher, Math.nextUp(middle));
+                }
+            }
+            assertMatchesTreeMap(matcher, -0.5);
+            assertMatchesTreeMap(matcher, 1.5);
+        }
+    }
+
+    @Test
+    void testTiesGoToTheLowestChar() {
+        // ' ' and '@' are the two extremes, so 0.5 lies exactly between them.
+        for (String chars : new String[]{" @", "@ "}) {
+            SubImgCharMatcher matcher = new SubImgCharMatcher(chars.toCharArray());
+            assertEquals(' ', matcher.getCharByImageBrightness(0.5));
+            assertEquals(' ', matcher.findClosestChar(0.5));
+        }
+    }
+
+    private static void assertMatchesTreeMap(SubImgCharMatcher matcher,
+                                             double brightness) {
+        assertEquals(matcher.findClosestChar(brightness),
+                matcher.getCharByImageBrightness(brightness),
+                "brightness " + brightness);
+    }
+
+    private static double probe(int k) {
+        return -0.1 + 1.2 * k / (PROBES - 1);
+    }
+
+    private static char[] matchAll(SubImgCharMatcher matcher) {
+        char[] matches = new char[PROBES];
+        for (int k = 0; k < PROBES; k++) {
+            matches[k] = matcher.getCharByImageBrightness(probe(k));
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,21 @@
+package metrics;
+
+/**
+ * The event counters of the conversion pipeline.
+ */
+public enum Counter {
+    /** Tiles whose brightness was computed. */
+    TILES_PROCESSED,
+    /** Tiles matched to a char. */
+    TILES_MATCHED,
+    /** Brightness lookups answered by the matcher's lookup table. */
+    MATCHER_TABLE_HITS,
+    /** Brightness lookups that fell back to the matcher's TreeMap. */
+    MATCHER_TABLE_MISSES,
+    /** Tiles matched by shape rather than by brightness. */
+    SHAPE_MATCHES,
+    /** Glyphs found in the glyph cache. */
+    GLYPH_CACHE_HITS,
+    /** Glyphs that had to be rendered. */
+    GLYPH_CACHE_MISSES
+}
@@ -0,0 +1,223 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Low-overhead timers and counters for each stage of the pipeline.
+ * <p>
+ * Metrics are enabled with {@code -Dasciiart.metrics=true}. The flag is read
+ * once into a static final field, so when it is off every call returns at
+ * once and the JIT removes the instrumentation altogether. When it is on, the
+ * metrics are registered in JMX as {@value #OBJECT_NAME}, and if
+ * {@code -Dasciiart.metrics.out=FILE} is given they are written there as JSON
+ * when the JVM exits ({@code -} writes them to standard error).
+ * <p>
+ * Stage timers are per thread: a stage is started and ended on the same
+ * thread, and its allocated bytes are those of that thread only.
+ */
+public final class PipelineMetrics implements PipelineMetricsMXBean {
+
+    /** Whether metrics are collected at all. */
+    public static final boolean ENABLED = Boolean.getBoolean("asciiart.metrics");
+    /** The JMX name of the metrics. */
+    public static final String OBJECT_NAME = "asciiart:type=PipelineMetrics";
+    private static final String OUT_PROPERTY = "asciiart.metrics.out";
+    private static final String STANDARD_ERROR = "-";
+    private static final int START_NANOS = 0;
+    private static final int START_BYTES = 1;
+    private static final int VALUES_PER_STAGE = 2;
+
+    private static final PipelineMetrics INSTANCE = new PipelineMetrics();
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final LongAdder[] stageNanos = createAdders(STAGES.length);
+    private static final LongAdder[] stageCounts = createAdders(STAGES.length);
+    private static final LongAdder[] stageBytes = createAdders(STAGES.length);
+    private static final LongAdder[] counters = createAdders(COUNTERS.length);
+    // start time and allocated bytes of the running stages of each thread.
+    private static final ThreadLocal<long[]> stageStarts = ThreadLocal.withInitial(
+            () -> new long[STAGES.length * VALUES_PER_STAGE]);
+    private static final com.sun.management.ThreadMXBean allocationBean =
+            getAllocationBean();
+
+    static {
+        if (ENABLED) {
+            register();
+        }
+    }
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Starts timing a stage on the calling thread.
+     */
+    public static void startStage(Stage stage) {
+        if (!ENABLED) {
+            return;
+        }
+        long[] starts = stageStarts.get();
+        starts[stage.ordinal() * VALUES_PER_STAGE + START_BYTES] = allocatedBytes();
+        starts[stage.ordinal() * VALUES_PER_STAGE + START_NANOS] = System.nanoTime();
+    }
+
+    /**
+     * Ends timing a stage started on the calling thread.
+     */
+    public static void endStage(Stage stage) {
+        if (!ENABLED) {
+            return;
+        }
+        long endNanos = System.nanoTime();
+        long[] starts = stageStarts.get();
+        int idx = stage.ordinal();
+        stageNanos[idx].add(endNanos - starts[idx * VALUES_PER_STAGE + START_NANOS]);
+        stageBytes[idx].add(allocatedBytes()
+                - starts[idx * VALUES_PER_STAGE + START_BYTES]);
+        stageCounts[idx].increment();
+    }
+
+    /**
+     * Adds one to a counter.
+     */
+    public static void increment(Counter counter) {
+        if (ENABLED) {
+            counters[counter.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Adds the given amount to a counter.
+     */
+    public static void add(Counter counter, long amount) {
+        if (ENABLED) {
+            counters[counter.ordinal()].add(amount);
+        }
+    }
+
+    /**
+     * Returns the metrics collected so far.
+     */
+    public static PipelineMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public Map<String, Long> getStageNanos() {
+        return toMap(STAGES, stageNanos);
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        return toMap(STAGES, stageCounts);
+    }
+
+    @Override
+    public Map<String, Long> getStageAllocatedBytes() {
+        return toMap(STAGES, stageBytes);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        return toMap(COUNTERS, counters);
+    }
+
+    @Override
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"enabled\":").append(ENABLED)
+                .append(",\"stages\":{");
+        for (int i = 0; i < STAGES.length; i++) {
+            json.append(i == 0 ? "" : ",").append('"').append(STAGES[i])
+                    .append("\":{\"count\":").append(stageCounts[i].sum())
+                    .append(",\"nanos\":").append(stageNanos[i].sum())
+                    .append(",\"allocatedBytes\":").append(stageBytes[i].sum())
+                    .append('}');
+        }
+        json.append("},\"counters\":{");
+        for (int i = 0; i < COUNTERS.length; i++) {
+            json.append(i == 0 ? "" : ",").append('"').append(COUNTERS[i])
+                    .append("\":").append(counters[i].sum());
+        }
+        return json.append("}}").toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder[] adders : new LongAdder[][]{stageNanos, stageCounts,
+                stageBytes, counters}) {
+            for (LongAdder adder : adders) {
+                adder.reset();
+            }
+        }
+    }
+
+    private static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                    new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            Logger.getGlobal().warning("Failed to register the pipeline metrics MBean");
+        }
+        String out = System.getProperty(OUT_PROPERTY);
+        if (out != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(out)));
+        }
+    }
+
+    private static void dump(String out) {
+        String json = INSTANCE.toJson();
+        if (out.equals(STANDARD_ERROR)) {
+            System.err.println(json);
+            return;
+        }
+        try {
+            Files.write(Paths.get(out), json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", out));
+        }
+    }
+
+    private static long allocatedBytes() {
+        return (allocationBean == null) ? 0
+                : allocationBean.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationBean() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean =
+                    (com.sun.management.ThreadMXBean) threadBean;
+            if (allocationBean.isThreadAllocatedMemorySupported()) {
+                return allocationBean;
+            }
+        }
+        return null;
+    }
+
+    private static LongAdder[] createAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static Map<String, Long> toMap(Enum<?>[] keys, LongAdder[] values) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i].name(), values[i].sum());
+        }
+        return map;
+    }
+}
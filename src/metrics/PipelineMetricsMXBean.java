@@ -0,0 +1,27 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link PipelineMetrics}, registered as
+ * {@value PipelineMetrics#OBJECT_NAME}.
+ */
+public interface PipelineMetricsMXBean {
+    /** Total nanoseconds spent in each stage. */
+    Map<String, Long> getStageNanos();
+
+    /** Number of times each stage ran. */
+    Map<String, Long> getStageCounts();
+
+    /** Bytes allocated by the calling threads during each stage. */
+    Map<String, Long> getStageAllocatedBytes();
+
+    /** Value of each counter. */
+    Map<String, Long> getCounters();
+
+    /** All of the above, as a JSON object. */
+    String toJson();
+
+    /** Zeroes every stage and counter. */
+    void reset();
+}
@@ -0,0 +1,94 @@
+package metrics;
+
+import ascii_art.AsciiArtAlgorithm;
+import ascii_output.ConsoleAsciiOutput;
+import image.Image;
+import image.ImageManager;
+import image_char_matching.SubImgCharMatcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.awt.image.BufferedImage;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/*
+ * Metrics are switched on once per JVM, so the build runs this test in a
+ * JVM of its own with -Dasciiart.metrics=true.
+ */
+class PipelineMetricsTest {
+
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 16;
+    private static final int RESOLUTION = 8;
+    // 4x4 pixel tiles, 8 in a row and 4 in a column.
+    private static final long TILES = 32;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testConversionMovesStagesAndCounters() throws Exception {
+        assumeTrue(PipelineMetrics.ENABLED, "needs -Dasciiart.metrics=true");
+        Path file = directory.resolve("image.png");
+        BufferedImage picture = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                picture.setRGB(x, y, (x * 8) * 0x010101);
+            }
+        }
+        ImageIO.write(picture, "png", file.toFile());
+        PipelineMetrics metrics = PipelineMetrics.getInstance();
+        metrics.reset();
+
+        Image image = ImageManager.imagePadding(new Image(file.toString()));
+        SubImgCharMatcher matcher = new SubImgCharMatcher("ab@".toCharArray());
+        char[][] chars = new AsciiArtAlgorithm(image, RESOLUTION, matcher).run();
+        new ConsoleAsciiOutput(new StringWriter()).out(chars);
+
+        // every stage ran once, on this thread.
+        Map<String, Long> counts = metrics.getStageCounts();
+        Map<String, Long> nanos = metrics.getStageNanos();
+        for (Stage stage : Stage.values()) {
+            assertEquals(1, counts.get(stage.name()), stage.name());
+            assertTrue(nanos.get(stage.name()) >= 0, stage.name());
+        }
+        assertTrue(nanos.get(Stage.IMAGE_LOAD.name()) > 0);
+        assertTrue(metrics.getStageAllocatedBytes()
+                .get(Stage.IMAGE_LOAD.name()) > 0);
+
+        Map<String, Long> counters = metrics.getCounters();
+        assertEquals(TILES, counters.get(Counter.TILES_PROCESSED.name()));
+        assertEquals(TILES, counters.get(Counter.TILES_MATCHED.name()));
+        assertEquals(TILES, counters.get(Counter.MATCHER_TABLE_HITS.name())
+                + counters.get(Counter.MATCHER_TABLE_MISSES.name()));
+        assertTrue(counters.get(Counter.GLYPH_CACHE_HITS.name())
+                + counters.get(Counter.GLYPH_CACHE_MISSES.name()) >= 3);
+        assertTrue(metrics.toJson().startsWith("{\"enabled\":true,"));
+        assertTrue(metrics.toJson().contains("\"TILES_MATCHED\":" + TILES));
+
+        // the same numbers are served over JMX.
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(PipelineMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(metrics.toJson(), server.invoke(name, "toJson", null, null));
+
+        metrics.reset();
+        for (Map<String, Long> values : List.of(metrics.getStageCounts(),
+                metrics.getStageNanos(), metrics.getCounters())) {
+            for (long value : values.values()) {
+                assertEquals(0, value);
+            }
+        }
+    }
+}
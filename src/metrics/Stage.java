@@ -0,0 +1,17 @@
+package metrics;
+
+/**
+ * The timed stages of the conversion pipeline.
+ */
+public enum Stage {
+    /** Decoding an image file into an Image. */
+    IMAGE_LOAD,
+    /** Padding an image to power-of-two dimensions. */
+    PADDING,
+    /** Computing tile brightness, as a grid or as a table or pyramid to query. */
+    BRIGHTNESS_GRID,
+    /** Matching tile brightness to chars. */
+    MATCHING,
+    /** Writing the chars to an output. */
+    OUTPUT
+}